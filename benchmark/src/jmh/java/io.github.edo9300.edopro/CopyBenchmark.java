@@ -0,0 +1,145 @@
+package io.github.edo9300.edopro;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a synthetic asset tree to a temporary folder with each strategy of
+ * the copy engine. The files and bytes counters give files/s and bytes/s.
+ * <ul>
+ * <li>sequential: a single thread streaming through a buffer, like the old copy loop</li>
+ * <li>parallel: ParallelCopier workers streaming through a buffer</li>
+ * <li>sendfile: ParallelCopier workers with ChannelTransfer, the transferTo loop
+ * (sendfile on linux) DirectAssetCopier and the local copies use</li>
+ * </ul>
+ * The largest tree is several GB on disk and is left out of the default run,
+ * run the jar with -p entries=100000 for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class CopyBenchmark {
+	@Param({"1000", "10000"})
+	public int entries;
+
+	@Param({"sequential", "parallel", "sendfile"})
+	public String strategy;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long files;
+		public long bytes;
+	}
+
+	private File source;
+	private File destination;
+	private List<AssetManifest.Entry> list;
+	private List<ParallelCopier.Job> jobs;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		list = SyntheticAssets.entries(entries, 42);
+		source = Files.createTempDirectory("assets").toFile();
+		SyntheticAssets.write(source, list, 42);
+		jobs = new ArrayList<>(list.size());
+		for (AssetManifest.Entry entry : list) {
+			if (!entry.isDirectory())
+				jobs.add(new ParallelCopier.Job(entry.path, entry.size));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createDestination() throws IOException {
+		destination = Files.createTempDirectory("working_dir").toFile();
+		for (AssetManifest.Entry entry : list) {
+			if (entry.isDirectory())
+				//noinspection ResultOfMethodCallIgnored
+				new File(destination, entry.path).mkdirs();
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteDestination() {
+		SyntheticAssets.delete(destination);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticAssets.delete(source);
+	}
+
+	@Benchmark
+	public void copy(Counters counters) throws InterruptedException {
+		List<String> failed;
+		switch (strategy) {
+			case "sequential":
+				failed = new ArrayList<>();
+				for (ParallelCopier.Job job : jobs) {
+					if (!stream(job.path))
+						failed.add(job.path);
+				}
+				break;
+			case "parallel":
+				failed = new ParallelCopier(ParallelCopier.defaultWorkers(), this::stream, null).run(jobs);
+				break;
+			case "sendfile":
+				failed = new ParallelCopier(ParallelCopier.defaultWorkers(), this::transfer, null).run(jobs);
+				break;
+			default:
+				throw new IllegalArgumentException(strategy);
+		}
+		if (!failed.isEmpty())
+			throw new IllegalStateException(failed.size() + " files failed to copy");
+		for (ParallelCopier.Job job : jobs) {
+			counters.files++;
+			counters.bytes += job.size;
+		}
+	}
+
+	private boolean stream(String path) {
+		try (var in = new FileInputStream(new File(source, path));
+			 var out = new FileOutputStream(new File(destination, path))) {
+			var buffer = new byte[8192];
+			int len;
+			while ((len = in.read(buffer)) > 0)
+				out.write(buffer, 0, len);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private boolean transfer(String path) {
+		try (var in = new FileInputStream(new File(source, path));
+			 var out = new FileOutputStream(new File(destination, path))) {
+			var channel = in.getChannel();
+			ChannelTransfer.copy(channel, 0, channel.size(), out.getChannel());
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
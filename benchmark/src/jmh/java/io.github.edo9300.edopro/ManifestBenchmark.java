@@ -0,0 +1,109 @@
+package io.github.edo9300.edopro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the manifest and going through it the way AssetCopyWorker does,
+ * and the scheduling of the resulting copy jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManifestBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int entries;
+
+	private File file;
+	private AssetManifest manifest;
+	private List<ParallelCopier.Job> jobs;
+	private String[] lookups;
+
+	@Setup
+	public void setup() throws IOException {
+		var list = SyntheticAssets.entries(entries, 42);
+		file = File.createTempFile("manifest", ".bin");
+		AssetManifest.save(file, list);
+		manifest = AssetManifest.load(file);
+		jobs = new ArrayList<>(list.size());
+		lookups = new String[1000];
+		for (int i = 0; i < list.size(); i++) {
+			var entry = list.get(i);
+			jobs.add(new ParallelCopier.Job(entry.path, entry.size,
+					entry.isCritical() ? CopyScheduler.PRIORITY_CRITICAL : CopyScheduler.PRIORITY_NORMAL));
+			if (i < lookups.length)
+				lookups[i] = entry.path;
+		}
+		for (int i = list.size(); i < lookups.length; i++)
+			lookups[i] = lookups[i % list.size()];
+	}
+
+	@TearDown
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	/**
+	 * mapping the file and checking the header, paths aren't decoded
+	 */
+	@Benchmark
+	public AssetManifest load() throws IOException {
+		return AssetManifest.load(file);
+	}
+
+	/**
+	 * reading it on the heap, as done for a compressed manifest
+	 */
+	@Benchmark
+	public AssetManifest read() throws IOException {
+		return AssetManifest.read(new FileInputStream(file));
+	}
+
+	/**
+	 * decoding every entry, the cost of ProcessFileList without the filesystem
+	 */
+	@Benchmark
+	public void scan(Blackhole blackhole) {
+		for (int i = 0; i < manifest.size(); i++)
+			blackhole.consume(manifest.entry(i));
+	}
+
+	/**
+	 * binary searches, as done against the installed manifest for every file
+	 */
+	@Benchmark
+	public void lookup(Blackhole blackhole) {
+		for (String path : lookups)
+			blackhole.consume(manifest.find(path));
+	}
+
+	/**
+	 * ordering all the jobs and handing them out as the copy workers would
+	 */
+	@Benchmark
+	public void schedule(Blackhole blackhole) {
+		var scheduler = new CopyScheduler(jobs);
+		boolean preferLarge = true;
+		List<ParallelCopier.Job> batch;
+		while (!(batch = scheduler.next(preferLarge)).isEmpty()) {
+			blackhole.consume(batch);
+			preferLarge = !preferLarge;
+		}
+	}
+}
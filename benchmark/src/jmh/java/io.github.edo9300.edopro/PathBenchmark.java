@@ -0,0 +1,78 @@
+package io.github.edo9300.edopro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The uri handling done by StorageOperations on every call from the native
+ * client, for the paths of a synthetic manifest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PathBenchmark {
+	private static final String ROOT = "content://com.android.externalstorage.documents/tree/primary%3AEDOPro"
+			+ "/document/primary%3AEDOPro";
+
+	private String[] paths;
+	/* the root followed by the plain path, as the native client passes them */
+	private String[] inputs;
+	private String[] uris;
+	private DocumentIndex index;
+
+	@Setup
+	public void setup() {
+		var entries = SyntheticAssets.entries(1000, 42);
+		paths = new String[entries.size()];
+		inputs = new String[entries.size()];
+		uris = new String[entries.size()];
+		index = new DocumentIndex();
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = "/" + entries.get(i).path;
+			inputs[i] = ROOT + paths[i];
+			uris[i] = DocumentPaths.normalize(ROOT, paths[i]);
+			index.put(DocumentIndex.key(ROOT, inputs[i]), uris[i], DocumentIndex.Type.FILE);
+		}
+	}
+
+	@Benchmark
+	public void normalize(Blackhole blackhole) {
+		for (String path : paths)
+			blackhole.consume(DocumentPaths.normalize(ROOT, path));
+	}
+
+	/**
+	 * StorageOperations.normalizeUri for a path it hasn't seen, the uri is
+	 * encoded from the index key
+	 */
+	@Benchmark
+	public void normalizeUri(Blackhole blackhole) {
+		for (String input : inputs)
+			blackhole.consume(DocumentPaths.normalize(ROOT, "/" + DocumentIndex.key(ROOT, input)));
+	}
+
+	/**
+	 * StorageOperations.normalizeUri for a path already in the index
+	 */
+	@Benchmark
+	public void normalizeUriCached(Blackhole blackhole) {
+		for (String input : inputs)
+			blackhole.consume(index.get(DocumentIndex.key(ROOT, input)).uri);
+	}
+
+	@Benchmark
+	public void splitParent(Blackhole blackhole) {
+		for (String uri : uris) {
+			var parts = DocumentPaths.splitParent(uri);
+			blackhole.consume(DocumentPaths.decode(parts[1]));
+		}
+	}
+}
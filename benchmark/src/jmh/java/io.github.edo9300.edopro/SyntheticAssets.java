@@ -0,0 +1,80 @@
+package io.github.edo9300.edopro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic asset trees shaped like the packaged ones: a few folders with
+ * mostly small scripts and some large images and databases.
+ */
+final class SyntheticAssets {
+	private static final String[] FOLDERS = {"script", "pics", "fonts", "textures", "config", "sound"};
+
+	private SyntheticAssets() {
+	}
+
+	static List<AssetManifest.Entry> entries(int count, long seed) {
+		var random = new Random(seed);
+		var entries = new ArrayList<AssetManifest.Entry>(count);
+		for (String folder : FOLDERS)
+			entries.add(new AssetManifest.Entry(folder, AssetManifest.FLAG_DIRECTORY, 0, new byte[AssetManifest.HASH_SIZE]));
+		for (int i = entries.size(); i < count; i++) {
+			var folder = FOLDERS[random.nextInt(FOLDERS.length)];
+			var hash = new byte[AssetManifest.HASH_SIZE];
+			random.nextBytes(hash);
+			int flags = random.nextInt(4) == 0 ? 0 : AssetManifest.FLAG_COMPRESSED;
+			if (random.nextInt(20) == 0)
+				flags |= AssetManifest.FLAG_CRITICAL;
+			entries.add(new AssetManifest.Entry(folder + "/c" + i + ".lua", flags, size(random), hash));
+		}
+		return entries;
+	}
+
+	/**
+	 * one file in a hundred is between 256 KiB and 4 MiB, the others up to 16 KiB
+	 */
+	static long size(Random random) {
+		if (random.nextInt(100) == 0)
+			return (256 << 10) + random.nextInt(15 << 18);
+		return 1 + random.nextInt(16 << 10);
+	}
+
+	/**
+	 * writes the files of the entries under the given folder, with random content
+	 */
+	static void write(File root, List<AssetManifest.Entry> entries, long seed) throws IOException {
+		var random = new Random(seed);
+		var buffer = new byte[64 << 10];
+		for (AssetManifest.Entry entry : entries) {
+			var file = new File(root, entry.path);
+			if (entry.isDirectory()) {
+				//noinspection ResultOfMethodCallIgnored
+				file.mkdirs();
+				continue;
+			}
+			try (var out = new FileOutputStream(file)) {
+				long remaining = entry.size;
+				while (remaining > 0) {
+					random.nextBytes(buffer);
+					int len = (int) Math.min(remaining, buffer.length);
+					out.write(buffer, 0, len);
+					remaining -= len;
+				}
+			}
+		}
+	}
+
+	static void delete(File file) {
+		var children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+}
@@ -0,0 +1,267 @@
+#!/usr/bin/env python3
+# Writes the binary asset manifest read by AssetManifest.java:
+#   header:  u32 magic "EDOM", u32 version, u32 entry count, u32 string table offset
+#   entries: u32 path offset, u32 path length, u32 flags, u64 size, u8[20] sha1
+#   strings: the utf-8 paths, entries are sorted by their bytes
+# usage: build-manifest.py <assets dir> <output> [--update <assets dir> <output>] [--objects dir]
+#                          [--previous dir --patches dir]
+#                          [--stored ext...] [--critical patterns file] [--direct patterns file]
+# With --objects, files with the same content and extension, in one tree or across the defaults and
+# update trees, are stored once as <objects dir>/<sha1><ext> and flagged FLAG_OBJECT in the manifests.
+# The duplicates are moved out of the trees, so these must be a staged copy of the sources, see
+# finalize-assets.sh.
+# With --previous, the files that changed since that tree (the assets of the previous release) get a
+# binary delta against their old version in <patches dir>/<old sha1>-<new sha1>, as read by
+# AssetManifest.patchPath, flagged FLAG_PATCH:
+#   header: u32 magic "EDOD", u32 version, u8[20] old sha1, u8[20] new sha1, u64 new size
+#   ops:    u8 0, u64 old offset, u32 length: copy from the old file
+#           u8 1, u32 length, data: literal bytes
+
+import argparse
+import fnmatch
+import hashlib
+import os
+import shutil
+import struct
+
+MAGIC = 0x45444F4D
+VERSION = 1
+
+FLAG_DIRECTORY = 1
+FLAG_COMPRESSED = 1 << 1
+FLAG_CRITICAL = 1 << 2
+FLAG_DIRECT = 1 << 3
+FLAG_OBJECT = 1 << 4
+FLAG_PATCH = 1 << 5
+
+PATCH_MAGIC = 0x45444F44
+PATCH_VERSION = 1
+PATCH_BLOCK = 4096
+# smaller files are always copied whole, and a delta bigger than this share of the file isn't worth it
+PATCH_MIN_SIZE = 64 * 1024
+PATCH_MAX_RATIO = 0.5
+OP_COPY = 0
+OP_DATA = 1
+
+# extensions aapt2 never compresses, the ones from build.gradle noCompress are passed as arguments
+DEFAULT_STORED = {
+	"jpg", "jpeg", "png", "gif", "wav", "mp2", "mp3", "ogg", "aac", "mpg", "mpeg", "mid", "midi",
+	"smf", "jet", "rtttl", "imy", "xmf", "mp4", "m4a", "m4v", "3gp", "3gpp", "3g2", "3gpp2", "amr",
+	"awb", "wma", "wmv", "webm", "mkv",
+}
+
+
+def sha1(path):
+	digest = hashlib.sha1()
+	with open(path, "rb") as f:
+		for chunk in iter(lambda: f.read(1 << 20), b""):
+			digest.update(chunk)
+	return digest.digest()
+
+
+def read_patterns(path):
+	if path is None:
+		return []
+	with open(path) as f:
+		return [line.strip() for line in f if line.strip() and not line.startswith("#")]
+
+
+def scan(root, stored, critical, direct):
+	entries = []
+	for dirpath, dirnames, filenames in os.walk(root, followlinks=True):
+		for name in dirnames:
+			full = os.path.join(dirpath, name)
+			entries.append((os.path.relpath(full, root), FLAG_DIRECTORY, 0, bytes(20)))
+		for name in filenames:
+			full = os.path.join(dirpath, name)
+			path = os.path.relpath(full, root)
+			flags = 0 if any(name.endswith("." + ext) for ext in stored) else FLAG_COMPRESSED
+			if any(fnmatch.fnmatchcase(path, pattern) for pattern in critical):
+				flags |= FLAG_CRITICAL
+			# only stored files can be read straight from the apk
+			if not flags & FLAG_COMPRESSED and any(fnmatch.fnmatchcase(path, pattern) for pattern in direct):
+				flags |= FLAG_DIRECT
+			entries.append((path, flags, os.path.getsize(full), sha1(full)))
+	return entries
+
+
+def extension(path):
+	# same rule as AssetManifest.extension, a leading dot doesn't start an extension
+	name = os.path.basename(path)
+	dot = name.rfind(".")
+	return name[dot:] if dot > 0 else ""
+
+
+def object_name(path, digest):
+	return digest.hex() + extension(path)
+
+
+def dedupe(trees, objects):
+	# trees: list of (assets dir, entries), the duplicated payloads are moved to the objects dir
+	count = {}
+	for root, entries in trees:
+		for path, flags, size, digest in entries:
+			if not flags & FLAG_DIRECTORY:
+				name = object_name(path, digest)
+				count[name] = count.get(name, 0) + 1
+	os.makedirs(objects, exist_ok=True)
+	saved = 0
+	result = []
+	for root, entries in trees:
+		deduped = []
+		for path, flags, size, digest in entries:
+			if not flags & FLAG_DIRECTORY and count[object_name(path, digest)] > 1:
+				target = os.path.join(objects, object_name(path, digest))
+				if os.path.exists(target):
+					os.remove(os.path.join(root, path))
+					saved += size
+				else:
+					shutil.move(os.path.join(root, path), target)
+				flags |= FLAG_OBJECT
+			deduped.append((path, flags, size, digest))
+		result.append(deduped)
+	print("deduplicated %d bytes into %s" % (saved, objects))
+	return result
+
+
+def weak_hash(a, b):
+	return (b << 16) | a
+
+
+def make_patch(old_path, new_path, old_digest, new_digest):
+	# rsync style: the old file is indexed by fixed blocks, the new one is scanned with a rolling checksum
+	with open(old_path, "rb") as f:
+		old = f.read()
+	with open(new_path, "rb") as f:
+		new = f.read()
+	index = {}
+	for offset in range(0, len(old) - PATCH_BLOCK + 1, PATCH_BLOCK):
+		block = old[offset:offset + PATCH_BLOCK]
+		a = sum(block) & 0xFFFF
+		b = sum((PATCH_BLOCK - i) * c for i, c in enumerate(block)) & 0xFFFF
+		index.setdefault(weak_hash(a, b), []).append(offset)
+	ops = bytearray()
+	literal_start = 0
+	literal_total = 0
+	budget = len(new) * PATCH_MAX_RATIO
+
+	def flush_literal(end):
+		ops.extend(struct.pack(">BI", OP_DATA, end - literal_start))
+		ops.extend(new[literal_start:end])
+
+	pos = 0
+	a = b = None
+	while pos + PATCH_BLOCK <= len(new):
+		if a is None:
+			window = new[pos:pos + PATCH_BLOCK]
+			a = sum(window) & 0xFFFF
+			b = sum((PATCH_BLOCK - i) * c for i, c in enumerate(window)) & 0xFFFF
+		match = None
+		for offset in index.get(weak_hash(a, b), ()):
+			if old[offset:offset + PATCH_BLOCK] == new[pos:pos + PATCH_BLOCK]:
+				match = offset
+				break
+		if match is None:
+			out_byte = new[pos]
+			in_byte = new[pos + PATCH_BLOCK] if pos + PATCH_BLOCK < len(new) else 0
+			a = (a - out_byte + in_byte) & 0xFFFF
+			b = (b - PATCH_BLOCK * out_byte + a) & 0xFFFF
+			pos += 1
+			if pos - literal_start + literal_total > budget:
+				return None
+			continue
+		length = PATCH_BLOCK
+		while match + length + PATCH_BLOCK <= len(old) and pos + length + PATCH_BLOCK <= len(new) \
+				and old[match + length:match + length + PATCH_BLOCK] == new[pos + length:pos + length + PATCH_BLOCK]:
+			length += PATCH_BLOCK
+		while match + length < len(old) and pos + length < len(new) and old[match + length] == new[pos + length]:
+			length += 1
+		if pos > literal_start:
+			literal_total += pos - literal_start
+			flush_literal(pos)
+		ops.extend(struct.pack(">BQI", OP_COPY, match, length))
+		pos += length
+		literal_start = pos
+		a = b = None
+	if len(new) > literal_start:
+		literal_total += len(new) - literal_start
+		flush_literal(len(new))
+	if literal_total > budget:
+		return None
+	return struct.pack(">II", PATCH_MAGIC, PATCH_VERSION) + old_digest + new_digest + struct.pack(">Q", len(new)) + ops
+
+
+def patch_name(old_digest, new_digest):
+	# same as AssetManifest.patchPath, a patch only applies to the old content it was made against
+	return old_digest.hex() + "-" + new_digest.hex()
+
+
+def make_patches(trees, previous, patches):
+	# trees: list of (assets dir, entries), flags the entries that got a patch
+	os.makedirs(patches, exist_ok=True)
+	result = []
+	for root, entries in trees:
+		patched = []
+		for path, flags, size, digest in entries:
+			old_path = os.path.join(previous, path)
+			if not flags & FLAG_DIRECTORY and size >= PATCH_MIN_SIZE and os.path.isfile(old_path):
+				old_digest = sha1(old_path)
+				target = os.path.join(patches, patch_name(old_digest, digest))
+				if old_digest != digest and not os.path.exists(target):
+					delta = make_patch(old_path, os.path.join(root, path), old_digest, digest)
+					if delta is not None:
+						with open(target, "wb") as f:
+							f.write(delta)
+						print("%s: %d byte patch for %d bytes" % (path, len(delta), size))
+				if old_digest != digest and os.path.exists(target):
+					flags |= FLAG_PATCH
+			patched.append((path, flags, size, digest))
+		result.append((root, patched))
+	return result
+
+
+def write(entries, output):
+	entries = sorted(((path.replace(os.sep, "/").encode("utf-8"), *rest) for path, *rest in entries),
+					 key=lambda entry: entry[0])
+	strings = 16 + len(entries) * 40
+	header = struct.pack(">IIII", MAGIC, VERSION, len(entries), strings)
+	table = bytearray()
+	body = bytearray()
+	for path, flags, size, digest in entries:
+		body += struct.pack(">IIIQ", len(table), len(path), flags, size) + digest
+		table += path
+	with open(output, "wb") as f:
+		f.write(header + body + table)
+
+
+def main():
+	parser = argparse.ArgumentParser()
+	parser.add_argument("assets")
+	parser.add_argument("output")
+	parser.add_argument("--update", nargs=2, metavar=("ASSETS", "OUTPUT"), help="the update tree and its manifest")
+	parser.add_argument("--objects", help="directory the duplicated files are moved to")
+	parser.add_argument("--previous", help="assets of the previous release, to make binary patches against")
+	parser.add_argument("--patches", help="directory the binary patches are written to")
+	parser.add_argument("--stored", nargs="*", default=[], help="extensions stored uncompressed (noCompress)")
+	parser.add_argument("--critical", help="file with the patterns of the assets copied before the game starts")
+	parser.add_argument("--direct", help="file with the patterns of the read only assets read from the apk")
+	args = parser.parse_args()
+	stored = DEFAULT_STORED | set(args.stored)
+	critical = read_patterns(args.critical)
+	direct = read_patterns(args.direct)
+	trees = [(args.assets, args.output)]
+	if args.update:
+		trees.append(tuple(args.update))
+	scanned = [(root, scan(root, stored, critical, direct)) for root, _ in trees]
+	if args.previous and args.patches:
+		scanned = make_patches(scanned, args.previous, args.patches)
+	if args.objects:
+		entries = dedupe(scanned, args.objects)
+	else:
+		entries = [tree_entries for _, tree_entries in scanned]
+	for (_, output), tree_entries in zip(trees, entries):
+		write(tree_entries, output)
+
+
+if __name__ == "__main__":
+	main()
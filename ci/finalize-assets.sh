@@ -1,10 +1,34 @@
 #!/usr/bin/env bash
 
-ASSETS=src/main/assets/defaults
-mkdir -p $ASSETS
-cd $ASSETS
+# The assets are staged in STAGED with their manifests, src/main/assets is left untouched so that
+# the script can be run again, build.gradle packages STAGED instead of src/main/assets when it exists
+SOURCE=src/main/assets
+STAGED=staged-assets
+CI=$(dirname "$(readlink -f "$0")")
+set -e
+rm -rf $STAGED
+# hard links are enough, the manifest step only moves and removes files in the staged tree
+# and writes its outputs as new files
+cp -al $SOURCE $STAGED 2>/dev/null || { rm -rf $STAGED; cp -a $SOURCE $STAGED; }
+rm -rf $STAGED/manifest.bin $STAGED/manifestu.bin $STAGED/objects $STAGED/patches
+mkdir -p $STAGED/defaults
+cd $STAGED/defaults
+rm -f .nomedia
 touch .nomedia
-# Finds all directories, excluding the current directory, and removes the ./ prefix
-find -L . ! -path . -type d | sed -E "s|^\./||" > ../index.txt
-# Finds all files and directories, excluding the current directory, and removes the ./ prefix
-find -L . ! -path . | sed -E "s|^\./||" > ../filelist.txt
\ No newline at end of file
+# Lists every file and directory with its flags, size and sha1 in a binary manifest,
+# the stored extensions are the noCompress ones from build.gradle.
+# The files that are in the apk more than once, here or in the update tree, are stored
+# once in assets/objects and referenced by their hash
+UPDATE=()
+if [ -d ../update ]; then
+	UPDATE=(--update ../update ../manifestu.bin)
+fi
+# PREVIOUS_ASSETS can point to the assets of the previous release, the files that changed since
+# then get a binary patch the app applies to its installed copy instead of copying them whole
+PATCHES=()
+if [ -n "$PREVIOUS_ASSETS" ]; then
+	PATCHES=(--previous "$PREVIOUS_ASSETS" --patches ../patches)
+fi
+python3 "$CI/build-manifest.py" . ../manifest.bin "${UPDATE[@]}" "${PATCHES[@]}" --objects ../objects \
+	--stored dll config vsh fsh ttf otf \
+	--critical "$CI/critical-assets.txt" --direct "$CI/direct-assets.txt"
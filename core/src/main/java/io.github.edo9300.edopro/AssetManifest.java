@@ -0,0 +1,322 @@
+package io.github.edo9300.edopro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Binary list of the packaged assets, generated by ci/build-manifest.py.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:  u32 magic "EDOM", u32 version, u32 entry count, u32 string table offset
+ * entries: u32 path offset, u32 path length, u32 flags, u64 size, u8[20] sha1
+ * strings: the utf-8 paths, entries are sorted by their bytes
+ * </pre>
+ * The packaged manifest is stored uncompressed in the apk and mapped directly,
+ * paths are only decoded when requested and lookups are binary searches on the
+ * raw bytes. The installed copy, saved in the app files dir after every asset
+ * copy, uses the same format.
+ * <p>
+ * Files packaged more than once, in the same tree or in both the defaults and
+ * the update tree, are stored a single time in the apk as
+ * objects/&lt;sha1&gt;&lt;extension&gt; and flagged {@link #FLAG_OBJECT}. Files
+ * that changed since the previous release can have a {@link DeltaPatch}
+ * against their old version, in patches/&lt;old sha1&gt;-&lt;sha1&gt;, flagged
+ * {@link #FLAG_PATCH}.
+ */
+final class AssetManifest {
+	static final int MAGIC = 0x45444f4d;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int ENTRY_SIZE = 40;
+	static final int HASH_SIZE = 20;
+
+	static final int FLAG_DIRECTORY = 1;
+	static final int FLAG_COMPRESSED = 1 << 1;
+	static final int FLAG_CRITICAL = 1 << 2;
+	static final int FLAG_DIRECT = 1 << 3;
+	static final int FLAG_OBJECT = 1 << 4;
+	static final int FLAG_PATCH = 1 << 5;
+
+	static final class Entry {
+		final String path;
+		final int flags;
+		final long size;
+		final byte[] hash;
+
+		Entry(String path, int flags, long size, byte[] hash) {
+			this.path = path;
+			this.flags = flags;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		boolean isDirectory() {
+			return (flags & FLAG_DIRECTORY) != 0;
+		}
+
+		boolean isCompressed() {
+			return (flags & FLAG_COMPRESSED) != 0;
+		}
+
+		boolean isCritical() {
+			return (flags & FLAG_CRITICAL) != 0;
+		}
+
+		boolean isDirect() {
+			return (flags & FLAG_DIRECT) != 0;
+		}
+
+		boolean isObject() {
+			return (flags & FLAG_OBJECT) != 0;
+		}
+
+		boolean isPatched() {
+			return (flags & FLAG_PATCH) != 0;
+		}
+
+		boolean sameContent(Entry other) {
+			return other != null && size == other.size && Arrays.equals(hash, other.hash);
+		}
+	}
+
+	private static final Comparator<byte[]> BYTE_ORDER = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			int len = Math.min(a.length, b.length);
+			for (int i = 0; i < len; i++) {
+				int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+				if (cmp != 0)
+					return cmp;
+			}
+			return a.length - b.length;
+		}
+	};
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int strings;
+
+	private AssetManifest(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("not an asset manifest");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("unsupported asset manifest version " + buffer.getInt(4));
+		count = buffer.getInt(8);
+		strings = buffer.getInt(12);
+		if (count < 0 || strings < HEADER_SIZE + (long) count * ENTRY_SIZE || strings > buffer.capacity())
+			throw new IOException("corrupted asset manifest");
+	}
+
+	/**
+	 * wraps an already loaded or mapped manifest, the buffer isn't copied
+	 */
+	static AssetManifest map(ByteBuffer buffer) throws IOException {
+		return new AssetManifest(buffer);
+	}
+
+	/**
+	 * reads the whole stream on the heap, used when the asset can't be mapped
+	 */
+	static AssetManifest read(InputStream is) throws IOException {
+		try (is) {
+			var out = new ByteArrayOutputStream();
+			var buf = new byte[8192];
+			int len;
+			while ((len = is.read(buf)) > 0)
+				out.write(buf, 0, len);
+			return new AssetManifest(ByteBuffer.wrap(out.toByteArray()));
+		}
+	}
+
+	static AssetManifest load(File file) throws IOException {
+		try (var is = new FileInputStream(file)) {
+			var channel = is.getChannel();
+			return new AssetManifest(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	int size() {
+		return count;
+	}
+
+	private int entryOffset(int index) {
+		return HEADER_SIZE + index * ENTRY_SIZE;
+	}
+
+	int flags(int index) {
+		return buffer.getInt(entryOffset(index) + 8);
+	}
+
+	long fileSize(int index) {
+		return buffer.getLong(entryOffset(index) + 12);
+	}
+
+	String path(int index) {
+		int offset = entryOffset(index);
+		var bytes = new byte[buffer.getInt(offset + 4)];
+		var dup = buffer.duplicate();
+		dup.position(strings + buffer.getInt(offset));
+		dup.get(bytes);
+		return decode(bytes);
+	}
+
+	Entry entry(int index) {
+		int offset = entryOffset(index);
+		var hash = new byte[HASH_SIZE];
+		var dup = buffer.duplicate();
+		dup.position(offset + 20);
+		dup.get(hash);
+		return new Entry(path(index), flags(index), fileSize(index), hash);
+	}
+
+	/**
+	 * @return the index of the entry with the given path, or -1
+	 */
+	int find(String path) {
+		var key = encode(path);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = comparePath(mid, key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private int comparePath(int index, byte[] key) {
+		int offset = entryOffset(index);
+		int start = strings + buffer.getInt(offset);
+		int length = buffer.getInt(offset + 4);
+		int len = Math.min(length, key.length);
+		for (int i = 0; i < len; i++) {
+			int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length - key.length;
+	}
+
+	Entry get(String path) {
+		int index = find(path);
+		return index < 0 ? null : entry(index);
+	}
+
+	boolean contains(String path) {
+		return find(path) >= 0;
+	}
+
+	/**
+	 * @param tree the folder of the assets the manifest lists, defaults or update
+	 * @return the path of the content of the entry in the apk assets
+	 */
+	static String assetPath(String tree, Entry entry) {
+		if (!entry.isObject())
+			return tree + "/" + entry.path;
+		return "objects/" + toHex(entry.hash) + extension(entry.path);
+	}
+
+	/**
+	 * @return the extension of the file name with its dot, or "". Same rule
+	 * as ci/build-manifest.py, a leading dot doesn't start an extension
+	 */
+	static String extension(String path) {
+		var name = path.substring(path.lastIndexOf('/') + 1);
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(dot) : "";
+	}
+
+	/**
+	 * @param oldHash the hash of the installed version of the file
+	 * @return the path in the apk assets of the patch that turns that
+	 * version into this one, there's none if it isn't the previous release
+	 */
+	static String patchPath(byte[] oldHash, Entry entry) {
+		return "patches/" + toHex(oldHash) + "-" + toHex(entry.hash);
+	}
+
+	static String toHex(byte[] bytes) {
+		var sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * writes the entries to a temporary file first and then renames it over
+	 * the destination, so a crash never leaves a truncated manifest behind
+	 */
+	static void save(File file, List<Entry> entries) throws IOException {
+		var paths = new ArrayList<byte[]>(entries.size());
+		var sorted = new ArrayList<>(entries);
+		Collections.sort(sorted, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return BYTE_ORDER.compare(encode(a.path), encode(b.path));
+			}
+		});
+		int stringsSize = 0;
+		for (Entry entry : sorted) {
+			var bytes = encode(entry.path);
+			paths.add(bytes);
+			stringsSize += bytes.length;
+		}
+		int strings = HEADER_SIZE + sorted.size() * ENTRY_SIZE;
+		var buffer = ByteBuffer.allocate(strings + stringsSize);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(sorted.size()).putInt(strings);
+		int pathOffset = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			var entry = sorted.get(i);
+			buffer.putInt(pathOffset).putInt(paths.get(i).length).putInt(entry.flags).putLong(entry.size);
+			buffer.put(entry.hash, 0, HASH_SIZE);
+			pathOffset += paths.get(i).length;
+		}
+		for (byte[] path : paths)
+			buffer.put(path);
+
+		var tmp = new File(file.getPath() + ".tmp");
+		try (var out = new FileOutputStream(tmp)) {
+			out.write(buffer.array());
+			out.getFD().sync();
+		}
+		if (!tmp.renameTo(file))
+			throw new IOException("cannot rename " + tmp + " to " + file);
+	}
+
+	private static byte[] encode(String path) {
+		try {
+			return path.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package io.github.edo9300.edopro;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where the packaged assets are read from, the apk assets on android.
+ */
+interface AssetSource {
+	/**
+	 * @param path relative to the root of the assets
+	 */
+	InputStream open(String path) throws IOException;
+}
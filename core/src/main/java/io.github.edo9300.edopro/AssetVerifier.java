@@ -0,0 +1,88 @@
+package io.github.edo9300.edopro;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes the installed copies of the assets and compares them with the
+ * packaged manifest, to find the files that got corrupted or were left half
+ * written. Files are hashed in parallel by the ParallelCopier workers, each
+ * one reading in fixed size chunks into its own direct buffer.
+ */
+final class AssetVerifier {
+	private static final int CHUNK_SIZE = 256 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> sBuffer = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(CHUNK_SIZE);
+		}
+	};
+
+	private static final ThreadLocal<MessageDigest> sDigest = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError(e);
+			}
+		}
+	};
+
+	private final AssetManifest manifest;
+	private final String workingDir;
+	private final int workers;
+
+	AssetVerifier(AssetManifest manifest, String workingDir, int workers) {
+		this.manifest = manifest;
+		this.workingDir = workingDir;
+		this.workers = workers;
+	}
+
+	/**
+	 * @return the paths whose installed copy doesn't match the manifest
+	 */
+	List<String> verify(List<String> paths) throws InterruptedException {
+		var jobs = new ArrayList<ParallelCopier.Job>(paths.size());
+		for (String path : paths)
+			jobs.add(new ParallelCopier.Job(path, manifest.fileSize(manifest.find(path))));
+		// the "copy" of a job is its check, the failed ones are the mismatches
+		return new ParallelCopier(workers, this::matches, null).run(jobs);
+	}
+
+	private boolean matches(String path) {
+		var entry = manifest.get(path);
+		var file = new File(workingDir, path);
+		if (entry == null || file.length() != entry.size)
+			return false;
+		try {
+			return Arrays.equals(sha1(file), entry.hash);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	static byte[] sha1(File file) throws IOException {
+		var digest = sDigest.get();
+		var buffer = sBuffer.get();
+		digest.reset();
+		try (var is = new FileInputStream(file)) {
+			var channel = is.getChannel();
+			buffer.clear();
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return digest.digest();
+	}
+}
@@ -0,0 +1,50 @@
+package io.github.edo9300.edopro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The FileChannel.transferTo loop of the copiers, sendfile on linux.
+ * transferTo may stop transferring without an error (it returns 0), the
+ * rest of the range is then copied through a buffer.
+ */
+final class ChannelTransfer {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ChannelTransfer() {
+	}
+
+	/**
+	 * copies length bytes of in starting at offset to the current position of out
+	 *
+	 * @return true if all of it was done with transferTo
+	 * @throws IOException if in ends before length bytes
+	 */
+	static boolean copy(FileChannel in, long offset, long length, WritableByteChannel out) throws IOException {
+		long end = offset + length;
+		while (offset < end) {
+			long sent = in.transferTo(offset, end - offset, out);
+			if (sent <= 0)
+				break;
+			offset += sent;
+		}
+		if (offset == end)
+			return true;
+		var buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, end - offset));
+		while (offset < end) {
+			buffer.clear();
+			if (end - offset < buffer.capacity())
+				buffer.limit((int) (end - offset));
+			int read = in.read(buffer, offset);
+			if (read < 0)
+				throw new IOException("source ended with " + (end - offset) + " bytes left");
+			buffer.flip();
+			while (buffer.hasRemaining())
+				out.write(buffer);
+			offset += read;
+		}
+		return false;
+	}
+}
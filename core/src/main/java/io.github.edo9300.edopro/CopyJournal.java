@@ -0,0 +1,122 @@
+package io.github.edo9300.edopro;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+/**
+ * Append-only record of the files copied by an asset copy that hasn't
+ * completed yet, one "sha1\tpath" line per file. The first line is the
+ * working directory the copy targets.
+ * <p>
+ * Every line is appended with a single unbuffered write, so it's on disk as
+ * soon as the copy of the file returns and survives the process being killed.
+ * A torn last line has no newline, it's cut off when the journal is
+ * reopened so that the next line doesn't complete it. The journal is deleted once
+ * the installed manifest is saved. With strict sync every line is also synced
+ * to the storage, so that it survives a power loss as well.
+ */
+final class CopyJournal implements Closeable {
+	private final File file;
+	private final HashMap<String, String> done = new HashMap<>();
+	private final FileOutputStream out;
+	private final boolean sync;
+	private boolean torn;
+
+	CopyJournal(File file, String workingDir, boolean sync) throws IOException {
+		this.file = file;
+		this.sync = sync;
+		boolean resume = file.exists() && load(workingDir);
+		if (resume && torn)
+			truncateTornLine(file);
+		out = new FileOutputStream(file, resume);
+		if (!resume)
+			out.write((workingDir + "\n").getBytes("UTF-8"));
+	}
+
+	/**
+	 * cuts the file after its last newline, the first line is complete if
+	 * the working directory matched
+	 */
+	private static void truncateTornLine(File file) throws IOException {
+		try (var raf = new RandomAccessFile(file, "rw")) {
+			long end = raf.length();
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() == '\n')
+					break;
+				end--;
+			}
+			raf.setLength(end);
+		}
+	}
+
+	private boolean load(String workingDir) {
+		try (var reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+			if (!workingDir.equals(reader.readLine()))
+				return false;
+			var sb = new StringBuilder();
+			int c;
+			while ((c = reader.read()) >= 0) {
+				if (c != '\n') {
+					sb.append((char) c);
+					continue;
+				}
+				int tab = sb.indexOf("\t");
+				if (tab > 0)
+					done.put(sb.substring(tab + 1), sb.substring(0, tab));
+				sb.setLength(0);
+			}
+			torn = sb.length() > 0;
+			return true;
+		} catch (IOException e) {
+			done.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if a previous run of the copy already wrote this content
+	 */
+	boolean isDone(String path, byte[] hash) {
+		var recorded = done.get(path);
+		return recorded != null && recorded.equals(AssetManifest.toHex(hash));
+	}
+
+	int size() {
+		return done.size();
+	}
+
+	/**
+	 * the file must already be synced to the storage, or the line could
+	 * reach it before the data does
+	 */
+	synchronized void record(String path, byte[] hash) throws IOException {
+		out.write((AssetManifest.toHex(hash) + "\t" + path + "\n").getBytes("UTF-8"));
+		if (sync)
+			out.getFD().sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * closes and removes the journal, called when the copy is complete
+	 */
+	void delete() {
+		try {
+			close();
+		} catch (IOException ignored) {
+		}
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.edo9300.edopro;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Decides which files the copy workers take next.
+ * <p>
+ * Jobs are handed out by priority class, all of a class before any of the
+ * next one. Within a class large files go biggest first and small files in
+ * batches, in manifest order so that files of the same folder stay
+ * together. Workers alternate between the two, so that a few large files
+ * keep the storage busy while the others get through the small ones instead
+ * of everyone waiting on the same big textures.
+ * <p>
+ * {@link #promote(String)} moves a pending file ahead of everything else,
+ * {@link #claim(String)} takes it out to be copied by the caller.
+ */
+final class CopyScheduler {
+	static final int PRIORITY_CRITICAL = 0;
+	static final int PRIORITY_NORMAL = 1;
+
+	static final long SMALL_FILE_SIZE = 256 * 1024;
+	static final int SMALL_BATCH_FILES = 32;
+	static final long SMALL_BATCH_BYTES = 1 << 20;
+
+	private static final class PriorityClass {
+		final ArrayDeque<ParallelCopier.Job> large = new ArrayDeque<>();
+		final ArrayDeque<ParallelCopier.Job> small = new ArrayDeque<>();
+	}
+
+	/* jobs are removed from the queues lazily, only the ones still in here are valid */
+	private final HashMap<String, ParallelCopier.Job> pending = new HashMap<>();
+	private final ArrayDeque<ParallelCopier.Job> promoted = new ArrayDeque<>();
+	private final TreeMap<Integer, PriorityClass> classes = new TreeMap<>();
+
+	CopyScheduler(List<ParallelCopier.Job> jobs) {
+		var large = new ArrayList<ParallelCopier.Job>();
+		for (ParallelCopier.Job job : jobs) {
+			pending.put(job.path, job);
+			var priorityClass = classes.get(job.priority);
+			if (priorityClass == null)
+				classes.put(job.priority, priorityClass = new PriorityClass());
+			if (job.size >= SMALL_FILE_SIZE)
+				large.add(job);
+			else
+				priorityClass.small.add(job);
+		}
+		Collections.sort(large, new Comparator<ParallelCopier.Job>() {
+			@Override
+			public int compare(ParallelCopier.Job a, ParallelCopier.Job b) {
+				return Long.compare(b.size, a.size);
+			}
+		});
+		for (ParallelCopier.Job job : large)
+			classes.get(job.priority).large.add(job);
+	}
+
+	/**
+	 * @param preferLarge take a large file if the current class has any left,
+	 *                    otherwise a batch of small ones
+	 * @return the jobs to copy, empty once there's nothing left
+	 */
+	synchronized List<ParallelCopier.Job> next(boolean preferLarge) {
+		var batch = new ArrayList<ParallelCopier.Job>();
+		var job = poll(promoted);
+		if (job != null) {
+			batch.add(job);
+			return batch;
+		}
+		for (PriorityClass priorityClass : classes.values()) {
+			if (preferLarge && (job = poll(priorityClass.large)) != null) {
+				batch.add(job);
+				return batch;
+			}
+			long bytes = 0;
+			while (batch.size() < SMALL_BATCH_FILES && bytes < SMALL_BATCH_BYTES
+					&& (job = poll(priorityClass.small)) != null) {
+				batch.add(job);
+				bytes += job.size;
+			}
+			if (batch.isEmpty() && (job = poll(priorityClass.large)) != null)
+				batch.add(job);
+			if (!batch.isEmpty())
+				return batch;
+		}
+		return batch;
+	}
+
+	private ParallelCopier.Job poll(ArrayDeque<ParallelCopier.Job> queue) {
+		ParallelCopier.Job job;
+		while ((job = queue.poll()) != null) {
+			if (pending.remove(job.path) != null)
+				return job;
+		}
+		return null;
+	}
+
+	/**
+	 * @return false if the file isn't waiting to be copied
+	 */
+	synchronized boolean promote(String path) {
+		var job = pending.get(path);
+		if (job == null)
+			return false;
+		promoted.addFirst(job);
+		return true;
+	}
+
+	/**
+	 * @return the job of the file if it was still waiting, it won't be
+	 * handed out to the workers anymore
+	 */
+	synchronized ParallelCopier.Job claim(String path) {
+		return pending.remove(path);
+	}
+
+	/**
+	 * drops all the pending jobs, the workers stop after their current batch
+	 */
+	synchronized void clear() {
+		pending.clear();
+	}
+}
@@ -0,0 +1,226 @@
+package io.github.edo9300.edopro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of an asset copy, updated concurrently by the copy workers and
+ * written to copy_stats.txt in the working directory at the end of each run.
+ */
+final class CopyStats {
+
+	enum Method {
+		/* stored asset copied with Os.sendfile */
+		SENDFILE,
+		/* stored asset copied with FileChannel.transferTo, before android 9 */
+		TRANSFER_TO,
+		/* compressed asset, or stored one whose direct copy failed, copied by libassetcopier */
+		NATIVE,
+		/* hard link to an installed file with the same content */
+		LINK,
+		/* copy of an installed file with the same content, where hard links aren't supported */
+		LOCAL_COPY,
+		/* binary patch applied to the installed previous version */
+		PATCH,
+	}
+
+	enum Phase {
+		/* loading the manifests and comparing them with the working directory */
+		SCAN,
+		/* hashing the installed files, only when verifying */
+		VERIFY,
+		/* deleting the files that aren't packaged anymore */
+		DELETE,
+		/* copying the files before the game starts */
+		COPY,
+		/* copying the non critical files after the game started */
+		BACKGROUND_COPY,
+		/* waiting for the batches still being synced and syncing the last one, without strict sync */
+		SYNC,
+	}
+
+	/* without strict sync, copied files are synced and journaled in batches of this many, off the copy threads */
+	static final int SYNC_BATCH = 256;
+	/* files preallocated before being written and reported on their own */
+	static final long LARGE_FILE_SIZE = 1 << 20;
+	private static final int SLOWEST_COUNT = 10;
+	/* bucket i counts the files copied in less than 2^i microseconds */
+	private static final int HISTOGRAM_BUCKETS = 25;
+
+	private static final class FileTime {
+		final String path;
+		final long size;
+		final long nanos;
+
+		FileTime(String path, long size, long nanos) {
+			this.path = path;
+			this.size = size;
+			this.nanos = nanos;
+		}
+	}
+
+	private static final Comparator<FileTime> BY_TIME = new Comparator<FileTime>() {
+		@Override
+		public int compare(FileTime a, FileTime b) {
+			return Long.compare(a.nanos, b.nanos);
+		}
+	};
+
+	private final long startNanos = System.nanoTime();
+	private final AtomicLongArray files = new AtomicLongArray(Method.values().length);
+	private final AtomicLongArray bytes = new AtomicLongArray(Method.values().length);
+	private final AtomicLongArray nanos = new AtomicLongArray(Method.values().length);
+	private final AtomicLongArray phases = new AtomicLongArray(Phase.values().length);
+	private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	private final PriorityQueue<FileTime> slowest = new PriorityQueue<>(SLOWEST_COUNT + 1, BY_TIME);
+	private final AtomicLong fileSyncNanos = new AtomicLong();
+	private final AtomicLong preallocatedFiles = new AtomicLong();
+	private final AtomicLong preallocatedBytes = new AtomicLong();
+	private final AtomicLong preallocateFailures = new AtomicLong();
+	private final AtomicLong preallocateNanos = new AtomicLong();
+	/* files of at least LARGE_FILE_SIZE, whichever way they were copied */
+	private final AtomicLong largeFiles = new AtomicLong();
+	private final AtomicLong largeBytes = new AtomicLong();
+	private final AtomicLong largeNanos = new AtomicLong();
+	private volatile boolean strictSync;
+	private int verified;
+	private List<String> mismatched = Collections.emptyList();
+
+	void record(Method method, String path, long size, long elapsedNanos) {
+		files.incrementAndGet(method.ordinal());
+		bytes.addAndGet(method.ordinal(), size);
+		nanos.addAndGet(method.ordinal(), elapsedNanos);
+		long micros = elapsedNanos / 1000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), HISTOGRAM_BUCKETS - 1);
+		histogram.incrementAndGet(bucket);
+		if (size >= LARGE_FILE_SIZE) {
+			largeFiles.incrementAndGet();
+			largeBytes.addAndGet(size);
+			largeNanos.addAndGet(elapsedNanos);
+		}
+		synchronized (slowest) {
+			if (slowest.size() < SLOWEST_COUNT || slowest.peek().nanos < elapsedNanos) {
+				slowest.add(new FileTime(path, size, elapsedNanos));
+				if (slowest.size() > SLOWEST_COUNT)
+					slowest.poll();
+			}
+		}
+	}
+
+	void addPhase(Phase phase, long elapsedNanos) {
+		phases.addAndGet(phase.ordinal(), elapsedNanos);
+	}
+
+	/**
+	 * @param size the preallocated size, -1 if the filesystem doesn't support it
+	 */
+	void recordPreallocation(long size, long elapsedNanos) {
+		preallocateNanos.addAndGet(elapsedNanos);
+		if (size < 0) {
+			preallocateFailures.incrementAndGet();
+			return;
+		}
+		preallocatedFiles.incrementAndGet();
+		preallocatedBytes.addAndGet(size);
+	}
+
+	void setStrictSync(boolean strictSync) {
+		this.strictSync = strictSync;
+	}
+
+	/**
+	 * time spent syncing a single file in strict sync mode, summed over all the workers
+	 */
+	void addFileSync(long elapsedNanos) {
+		fileSyncNanos.addAndGet(elapsedNanos);
+	}
+
+	void setVerified(int files, List<String> mismatched) {
+		verified = files;
+		this.mismatched = mismatched;
+	}
+
+	long files(Method method) {
+		return files.get(method.ordinal());
+	}
+
+	long bytes(Method method) {
+		return bytes.get(method.ordinal());
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	private static double megabytesPerSecond(long bytes, long nanos) {
+		return nanos > 0 ? bytes / seconds(nanos) / (1 << 20) : 0.0;
+	}
+
+	String summary() {
+		var sb = new StringBuilder();
+		long totalFiles = 0;
+		long totalBytes = 0;
+		for (Method method : Method.values()) {
+			totalFiles += files(method);
+			totalBytes += bytes(method);
+		}
+		long copyNanos = phases.get(Phase.COPY.ordinal()) + phases.get(Phase.BACKGROUND_COPY.ordinal());
+		sb.append(String.format(Locale.ROOT, "wall time: %.3f s\n", seconds(System.nanoTime() - startNanos)));
+		for (Phase phase : Phase.values())
+			sb.append(String.format(Locale.ROOT, "  %s: %.3f s\n", name(phase), seconds(phases.get(phase.ordinal()))));
+		sb.append(String.format(Locale.ROOT, "copied: %d files, %d bytes, %.1f files/s, %.2f MB/s\n",
+				totalFiles, totalBytes, copyNanos > 0 ? totalFiles / seconds(copyNanos) : 0.0,
+				megabytesPerSecond(totalBytes, copyNanos)));
+		for (Method method : Method.values()) {
+			long count = files(method);
+			if (count == 0)
+				continue;
+			sb.append(String.format(Locale.ROOT, "  %s: %d files, %d bytes, %.2f MB/s per worker\n",
+					name(method), count, bytes(method), megabytesPerSecond(bytes(method), nanos.get(method.ordinal()))));
+		}
+		// the copy phases include the per file or per batch syncs, plus the final sync
+		long durableNanos = copyNanos + phases.get(Phase.SYNC.ordinal());
+		sb.append(String.format(Locale.ROOT, "durability: %s, %.2f MB/s including sync\n",
+				strictSync ? "strict, synced after every file" : "batched, synced every " + SYNC_BATCH + " files off the copy threads",
+				megabytesPerSecond(totalBytes, durableNanos)));
+		if (strictSync)
+			sb.append(String.format(Locale.ROOT, "  per file sync: %.3f s over all workers\n", seconds(fileSyncNanos.get())));
+		if (largeFiles.get() > 0) {
+			sb.append(String.format(Locale.ROOT, "large files: %d files, %d bytes, %.2f MB/s per worker\n",
+					largeFiles.get(), largeBytes.get(), megabytesPerSecond(largeBytes.get(), largeNanos.get())));
+			sb.append(String.format(Locale.ROOT, "  preallocated: %d files, %d bytes, %.3f ms in fallocate, %d unsupported\n",
+					preallocatedFiles.get(), preallocatedBytes.get(), preallocateNanos.get() / 1e6,
+					preallocateFailures.get()));
+		}
+		if (verified > 0) {
+			sb.append(String.format(Locale.ROOT, "verified: %d files, %d mismatched\n", verified, mismatched.size()));
+			for (String path : mismatched)
+				sb.append("  ").append(path).append('\n');
+		}
+		sb.append("per file latency:\n");
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			long count = histogram.get(i);
+			if (count > 0)
+				sb.append(String.format(Locale.ROOT, "  < %d us: %d\n", 1L << i, count));
+		}
+		ArrayList<FileTime> top;
+		synchronized (slowest) {
+			top = new ArrayList<>(slowest);
+		}
+		Collections.sort(top, Collections.reverseOrder(BY_TIME));
+		sb.append("slowest files:\n");
+		for (FileTime file : top)
+			sb.append(String.format(Locale.ROOT, "  %.3f ms, %d bytes: %s\n", file.nanos / 1e6, file.size, file.path));
+		return sb.toString();
+	}
+
+	private static String name(Enum<?> value) {
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+}
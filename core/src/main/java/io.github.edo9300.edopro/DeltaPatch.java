@@ -0,0 +1,120 @@
+package io.github.edo9300.edopro;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Applies the binary patches made by ci/build-manifest.py to the installed
+ * copy of an asset, so that a file that changed a little since the previous
+ * release is updated without copying it whole.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header: u32 magic "EDOD", u32 version, u8[20] old sha1, u8[20] new sha1, u64 new size
+ * ops:    u8 0, u64 old offset, u32 length: copy from the old file
+ *         u8 1, u32 length, data: literal bytes
+ * </pre>
+ * The old file is hashed before and the result after, the result is written
+ * to a temporary file renamed over the old one only if it matches.
+ */
+final class DeltaPatch {
+	static final int MAGIC = 0x45444f44;
+	static final int VERSION = 1;
+
+	private static final int OP_COPY = 0;
+	private static final int OP_DATA = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private DeltaPatch() {
+	}
+
+	/**
+	 * @param oldHash the content the installed manifest says the file has
+	 * @param newHash the content the packaged manifest expects
+	 * @throws IOException if the patch doesn't apply, the file is left untouched
+	 */
+	static void apply(AssetSource assets, FileSink sink, String patch, File file, byte[] oldHash, byte[] newHash)
+			throws IOException {
+		var tmp = new File(file.getPath() + ".patch");
+		try (var in = new DataInputStream(new BufferedInputStream(assets.open(patch), BUFFER_SIZE));
+			 var base = new RandomAccessFile(file, "r");
+			 var out = new FileOutputStream(tmp)) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("not a patch");
+			var patchOld = new byte[AssetManifest.HASH_SIZE];
+			var patchNew = new byte[AssetManifest.HASH_SIZE];
+			in.readFully(patchOld);
+			in.readFully(patchNew);
+			long size = in.readLong();
+			if (!Arrays.equals(patchOld, oldHash) || !Arrays.equals(patchNew, newHash))
+				throw new IOException("patch is for another version");
+			if (!Arrays.equals(AssetVerifier.sha1(file), oldHash))
+				throw new IOException("installed file was modified");
+
+			sink.preallocate(out.getFD(), size);
+			var digest = sha1();
+			var buffer = new byte[BUFFER_SIZE];
+			var baseChannel = base.getChannel();
+			var outChannel = out.getChannel();
+			long written = 0;
+			int op;
+			while ((op = in.read()) >= 0) {
+				if (op == OP_COPY) {
+					long offset = in.readLong();
+					long length = in.readInt() & 0xffffffffL;
+					while (length > 0) {
+						var chunk = ByteBuffer.wrap(buffer, 0, (int) Math.min(length, BUFFER_SIZE));
+						while (chunk.hasRemaining()) {
+							if (baseChannel.read(chunk, offset + chunk.position()) < 0)
+								throw new IOException("copy past the end of the old file");
+						}
+						digest.update(buffer, 0, chunk.limit());
+						outChannel.write(ByteBuffer.wrap(buffer, 0, chunk.limit()));
+						offset += chunk.limit();
+						length -= chunk.limit();
+						written += chunk.limit();
+					}
+				} else if (op == OP_DATA) {
+					long length = in.readInt() & 0xffffffffL;
+					while (length > 0) {
+						int len = (int) Math.min(length, BUFFER_SIZE);
+						in.readFully(buffer, 0, len);
+						digest.update(buffer, 0, len);
+						out.write(buffer, 0, len);
+						length -= len;
+						written += len;
+					}
+				} else {
+					throw new IOException("unknown patch op " + op);
+				}
+			}
+			if (written != size || !Arrays.equals(digest.digest(), newHash))
+				throw new IOException("patched file doesn't match");
+		} catch (IOException e) {
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			throw e;
+		}
+		if (!tmp.renameTo(file)) {
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			throw new IOException("cannot rename " + tmp + " to " + file);
+		}
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package io.github.edo9300.edopro;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The document uris and types of the paths under a document tree that were
+ * already resolved, so repeated operations on a path don't encode it again
+ * nor ask the provider what it is. Paths are relative to the tree root,
+ * without leading or trailing separator.
+ */
+final class DocumentIndex {
+	enum Type {
+		UNKNOWN,
+		FILE,
+		FOLDER,
+	}
+
+	static final class Entry {
+		final String uri;
+		final Type type;
+
+		Entry(String uri, Type type) {
+			this.uri = uri;
+			this.type = type;
+		}
+	}
+
+	/* the index is dropped as a whole past this many paths */
+	private static final int MAX_ENTRIES = 32768;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param root  the uri of the tree
+	 * @param input a uri under the tree or a path relative to it
+	 * @return the index key of the path, decoded so a uri and the path it
+	 * encodes share their key
+	 */
+	static String key(String root, String input) {
+		return trim(DocumentPaths.decode(input.replace(root, "")));
+	}
+
+	/**
+	 * @return the path without its leading and trailing separators
+	 */
+	static String trim(String path) {
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/')
+			start++;
+		while (end > start && path.charAt(end - 1) == '/')
+			end--;
+		return path.substring(start, end);
+	}
+
+	/**
+	 * @return the key of the folder containing the path, the root is ""
+	 */
+	static String parent(String key) {
+		int i = key.lastIndexOf('/');
+		return i < 0 ? "" : key.substring(0, i);
+	}
+
+	Entry get(String key) {
+		var entry = entries.get(key);
+		(entry != null ? hits : misses).incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * records a path with its type, an unknown type doesn't replace a known one
+	 *
+	 * @return the entry now recorded for the path
+	 */
+	Entry put(String key, String uri, Type type) {
+		if (entries.size() >= MAX_ENTRIES)
+			entries.clear();
+		var entry = new Entry(uri, type);
+		if (type == Type.UNKNOWN) {
+			var previous = entries.putIfAbsent(key, entry);
+			return previous != null ? previous : entry;
+		}
+		entries.put(key, entry);
+		return entry;
+	}
+
+	/**
+	 * records the children of a folder from its listing
+	 *
+	 * @param names as returned by a listing, folders have a trailing slash
+	 */
+	void putChildren(String key, String uri, String[] names) {
+		var prefix = key.isEmpty() ? "" : key + "/";
+		var uriPrefix = DocumentPaths.trimSeparator(uri) + DocumentPaths.encode("/");
+		for (String name : names) {
+			boolean folder = name.endsWith("/");
+			if (folder)
+				name = name.substring(0, name.length() - 1);
+			put(prefix + name, uriPrefix + DocumentPaths.encode(name), folder ? Type.FOLDER : Type.FILE);
+		}
+	}
+
+	/**
+	 * forgets the path and everything under it
+	 */
+	void remove(String key) {
+		entries.remove(key);
+		var prefix = key.isEmpty() ? "" : key + "/";
+		for (var it = entries.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().startsWith(prefix))
+				it.remove();
+		}
+	}
+
+	void clear() {
+		entries.clear();
+	}
+
+	String stats() {
+		return hits.get() + " hits, " + misses.get() + " misses, " + entries.size() + " paths";
+	}
+}
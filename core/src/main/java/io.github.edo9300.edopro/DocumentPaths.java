@@ -0,0 +1,143 @@
+package io.github.edo9300.edopro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The string handling of document uris and storage paths, without the
+ * android Uri class.
+ */
+final class DocumentPaths {
+	private static final String ENCODED_SLASH = "%2F";
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private DocumentPaths() {
+	}
+
+	/**
+	 * percent encodes everything but letters, digits and _-!.~'()*, same as Uri.encode
+	 */
+	static String encode(String s) {
+		StringBuilder sb = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (isAllowed(c)) {
+				if (sb != null)
+					sb.append(c);
+				continue;
+			}
+			if (sb == null)
+				sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+			int end = i + 1;
+			while (end < s.length() && !isAllowed(s.charAt(end)))
+				end++;
+			for (byte b : utf8(s.substring(i, end)))
+				sb.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+			i = end - 1;
+		}
+		return sb == null ? s : sb.toString();
+	}
+
+	private static boolean isAllowed(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| "_-!.~'()*".indexOf(c) >= 0;
+	}
+
+	/**
+	 * decodes the percent encoded utf-8 sequences, same as Uri.decode for
+	 * well formed input, malformed escapes are kept as they are
+	 */
+	static String decode(String s) {
+		if (s.indexOf('%') < 0)
+			return s;
+		var out = new ByteArrayOutputStream(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '%' && i + 2 < s.length() && Character.digit(s.charAt(i + 1), 16) >= 0
+					&& Character.digit(s.charAt(i + 2), 16) >= 0) {
+				out.write(Character.digit(s.charAt(i + 1), 16) << 4 | Character.digit(s.charAt(i + 2), 16));
+				i += 2;
+			} else if (c < 0x80) {
+				out.write(c);
+			} else {
+				var bytes = utf8(String.valueOf(c));
+				out.write(bytes, 0, bytes.length);
+			}
+		}
+		try {
+			return out.toString("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param root  the uri of the tree, paths under it are encoded as a single segment
+	 * @param input a uri under the tree or a path relative to it
+	 */
+	static String normalize(String root, String input) {
+		return root + encode(input.replace(root, ""));
+	}
+
+	/**
+	 * @return the document uri without its trailing encoded separator, if it has one
+	 */
+	static String trimSeparator(String uri) {
+		if (uri.endsWith(ENCODED_SLASH))
+			return uri.substring(0, uri.length() - ENCODED_SLASH.length());
+		return uri;
+	}
+
+	/**
+	 * @return the uri of the parent and the encoded name of a document uri
+	 */
+	static String[] splitParent(String uri) {
+		uri = trimSeparator(uri);
+		int i = uri.lastIndexOf(ENCODED_SLASH);
+		return new String[]{uri.substring(0, i), uri.substring(i + ENCODED_SLASH.length())};
+	}
+
+	/**
+	 * @param documentId a tree document id, as "volume:path"
+	 * @return the path of the document in the given volume, without trailing separator
+	 */
+	static String fullPath(String volumePath, String documentId) {
+		if (volumePath.endsWith(File.separator))
+			volumePath = volumePath.substring(0, volumePath.length() - 1);
+		var documentPath = documentPath(documentId);
+		if (documentPath.endsWith(File.separator))
+			documentPath = documentPath.substring(0, documentPath.length() - 1);
+		if (documentPath.isEmpty())
+			return volumePath;
+		if (documentPath.startsWith(File.separator))
+			return volumePath + documentPath;
+		return volumePath + File.separator + documentPath;
+	}
+
+	/**
+	 * @return the volume part of a tree document id, or null
+	 */
+	static String volumeId(String documentId) {
+		var split = documentId.split(":");
+		return split.length > 0 ? split[0] : null;
+	}
+
+	/**
+	 * @return the path part of a tree document id, or the separator if it has none
+	 */
+	static String documentPath(String documentId) {
+		var split = documentId.split(":");
+		if (split.length >= 2 && split[1] != null)
+			return split[1];
+		return File.separator;
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
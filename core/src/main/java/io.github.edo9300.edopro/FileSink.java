@@ -0,0 +1,25 @@
+package io.github.edo9300.edopro;
+
+import java.io.FileDescriptor;
+
+/**
+ * The operations on the working directory the copy does besides writing the
+ * files, done by the native client on android. Paths are absolute.
+ */
+interface FileSink {
+	/**
+	 * @return true if the folder exists afterwards
+	 */
+	boolean makeDirectory(String path);
+
+	/**
+	 * @return true if a file was deleted
+	 */
+	boolean delete(String path);
+
+	/**
+	 * reserves the blocks of a file that is about to be written with the
+	 * given size, does nothing if the filesystem doesn't support it
+	 */
+	void preallocate(FileDescriptor fd, long size);
+}
@@ -0,0 +1,81 @@
+package io.github.edo9300.edopro;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The paths a lookup recently found missing, so the native client probing
+ * the same candidate locations again doesn't ask the provider each time.
+ * Paths are keyed as in DocumentIndex. An entry is trusted for a limited
+ * time only, as files can appear without us knowing.
+ */
+final class MissingPaths {
+	/* the paths are dropped as a whole past this many */
+	private static final int MAX_ENTRIES = 4096;
+
+	private final long ttlNanos;
+	/* path to the System.nanoTime it expires at */
+	private final ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+
+	MissingPaths(long ttlMillis) {
+		ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	}
+
+	/**
+	 * @return true if the path was found missing and that is still trusted
+	 */
+	boolean contains(String key) {
+		var expiry = expiries.get(key);
+		if (expiry != null) {
+			if (expiry - System.nanoTime() > 0) {
+				hits.incrementAndGet();
+				return true;
+			}
+			expiries.remove(key, expiry);
+			expired.incrementAndGet();
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	void add(String key) {
+		if (expiries.size() >= MAX_ENTRIES)
+			expiries.clear();
+		expiries.put(key, System.nanoTime() + ttlNanos);
+	}
+
+	/**
+	 * forgets a path that now exists, together with the folders containing it
+	 */
+	void remove(String key) {
+		while (true) {
+			expiries.remove(key);
+			if (key.isEmpty())
+				return;
+			key = DocumentIndex.parent(key);
+		}
+	}
+
+	/**
+	 * forgets the paths under a folder, when its contents are known
+	 */
+	void removeChildren(String key) {
+		var prefix = key.isEmpty() ? "" : key + "/";
+		for (var it = expiries.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().startsWith(prefix))
+				it.remove();
+		}
+	}
+
+	void clear() {
+		expiries.clear();
+	}
+
+	String stats() {
+		return hits.get() + " hits, " + misses.get() + " misses, " + expired.get() + " expired";
+	}
+}
@@ -0,0 +1,96 @@
+package io.github.edo9300.edopro;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies a list of files with a fixed number of worker threads, in the
+ * order given by a {@link CopyScheduler}.
+ */
+final class ParallelCopier {
+
+	interface CopyFunction {
+		boolean copy(String path);
+	}
+
+	interface ProgressListener {
+		/**
+		 * called from the worker threads after every file
+		 */
+		void onProgress(int filesDone, long bytesDone, String path);
+	}
+
+	static final class Job {
+		final String path;
+		final long size;
+		final int priority;
+
+		Job(String path, long size) {
+			this(path, size, CopyScheduler.PRIORITY_NORMAL);
+		}
+
+		Job(String path, long size, int priority) {
+			this.path = path;
+			this.size = size;
+			this.priority = priority;
+		}
+	}
+
+	private final int workers;
+	private final CopyFunction copyFunction;
+	private final ProgressListener listener;
+	private final AtomicInteger filesDone = new AtomicInteger();
+	private final AtomicLong bytesDone = new AtomicLong();
+	private final Vector<String> failed = new Vector<>();
+
+	ParallelCopier(int workers, CopyFunction copyFunction, ProgressListener listener) {
+		this.workers = Math.max(1, workers);
+		this.copyFunction = copyFunction;
+		this.listener = listener;
+	}
+
+	static int defaultWorkers() {
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+	}
+
+	/**
+	 * copies all the jobs and blocks until they're done
+	 *
+	 * @return the paths that failed to copy
+	 */
+	List<String> run(List<Job> jobs) throws InterruptedException {
+		final var scheduler = new CopyScheduler(jobs);
+		int count = Math.min(workers, jobs.size());
+		var threads = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			// half of the workers start on the large files, they all alternate afterwards
+			final boolean preferLarge = (i & 1) == 0;
+			threads[i] = new Thread(() -> work(scheduler, preferLarge), "AssetCopy-" + i);
+			threads[i].start();
+		}
+		try {
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			// make the workers stop after their current batch
+			scheduler.clear();
+			throw e;
+		}
+		return failed;
+	}
+
+	private void work(CopyScheduler scheduler, boolean preferLarge) {
+		List<Job> batch;
+		while (!(batch = scheduler.next(preferLarge)).isEmpty()) {
+			for (Job job : batch) {
+				if (!copyFunction.copy(job.path))
+					failed.add(job.path);
+				if (listener != null)
+					listener.onProgress(filesDone.incrementAndGet(), bytesDone.addAndGet(job.size), job.path);
+			}
+			preferLarge = !preferLarge;
+		}
+	}
+}
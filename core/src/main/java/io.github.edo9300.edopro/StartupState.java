@@ -0,0 +1,120 @@
+package io.github.edo9300.edopro;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * What the launcher remembers between runs, kept in a single file in the app
+ * files dir as "key=value" lines:
+ * <pre>
+ * working_dir=the folder the game files are in
+ * assets_version=the version code the assets were last copied for, 0 if none
+ * </pre>
+ * The file replaces the separate working_dir and assets_copied files of the
+ * older versions, they're migrated the first time it's loaded. Instances are
+ * immutable, so that they can be saved from another thread.
+ */
+final class StartupState {
+	static final String FILE_NAME = "startup_state";
+	private static final String LEGACY_WORKING_DIR = "working_dir";
+	private static final String LEGACY_ASSETS_COPIED = "assets_copied";
+
+	final String workingDir;
+	final int assetsVersion;
+
+	StartupState(String workingDir, int assetsVersion) {
+		this.workingDir = workingDir;
+		this.assetsVersion = assetsVersion;
+	}
+
+	StartupState withWorkingDir(String workingDir) {
+		return new StartupState(workingDir, assetsVersion);
+	}
+
+	StartupState withAssetsVersion(int assetsVersion) {
+		return new StartupState(workingDir, assetsVersion);
+	}
+
+	static StartupState load(File filesDir) {
+		var file = new File(filesDir, FILE_NAME);
+		if (file.exists()) {
+			String workingDir = null;
+			int assetsVersion = 0;
+			try (var reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					int eq = line.indexOf('=');
+					if (eq < 0)
+						continue;
+					var value = line.substring(eq + 1);
+					switch (line.substring(0, eq)) {
+						case "working_dir" -> workingDir = value.isEmpty() ? null : value;
+						case "assets_version" -> assetsVersion = parseVersion(value);
+					}
+				}
+			} catch (IOException ignored) {
+			}
+			return new StartupState(workingDir, assetsVersion);
+		}
+		return migrate(filesDir);
+	}
+
+	private static StartupState migrate(File filesDir) {
+		var workingDirFile = new File(filesDir, LEGACY_WORKING_DIR);
+		var assetsCopiedFile = new File(filesDir, LEGACY_ASSETS_COPIED);
+		// an emptied assets_copied file means an update copy didn't complete
+		var state = new StartupState(readFirstLine(workingDirFile), parseVersion(readFirstLine(assetsCopiedFile)));
+		if (state.workingDir == null && !assetsCopiedFile.exists())
+			return state;
+		try {
+			state.save(filesDir);
+			//noinspection ResultOfMethodCallIgnored
+			workingDirFile.delete();
+			//noinspection ResultOfMethodCallIgnored
+			assetsCopiedFile.delete();
+		} catch (IOException ignored) {
+			// the old files are read again on the next launch
+		}
+		return state;
+	}
+
+	private static String readFirstLine(File file) {
+		if (!file.exists())
+			return null;
+		try (var reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+			var line = reader.readLine();
+			return line == null || line.isEmpty() ? null : line;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static int parseVersion(String value) {
+		try {
+			return value == null ? 0 : Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * writes the state to a temporary file first and then renames it over
+	 * the old one, so a crash leaves either the old or the new state
+	 */
+	void save(File filesDir) throws IOException {
+		var content = "working_dir=" + (workingDir == null ? "" : workingDir) + "\n"
+				+ "assets_version=" + assetsVersion + "\n";
+		var file = new File(filesDir, FILE_NAME);
+		var tmp = new File(filesDir, FILE_NAME + ".tmp");
+		try (var out = new FileOutputStream(tmp)) {
+			out.write(content.getBytes("UTF-8"));
+			out.getFD().sync();
+		}
+		if (!tmp.renameTo(file))
+			throw new IOException("cannot rename " + tmp + " to " + file);
+	}
+}
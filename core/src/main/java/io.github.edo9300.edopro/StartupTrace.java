@@ -0,0 +1,144 @@
+package io.github.edo9300.edopro;
+
+import java.util.Locale;
+
+/**
+ * Timestamped milestones of the launch, from the process start to the hand
+ * off to the native client, kept in a fixed size ring buffer so that warm
+ * starts in the same process only overwrite the oldest ones. Times are in
+ * the elapsed realtime clock, in milliseconds.
+ */
+final class StartupTrace {
+	static final String PROCESS_START = "process start";
+	static final String ON_CREATE = "onCreate";
+	static final String STATE_LOADED = "state loaded";
+	static final String COPY_CHECKED = "copy check done";
+	static final String COPY_STARTED = "copy started";
+	static final String COPY_FINISHED = "copy finished";
+	static final String NATIVE_LAUNCHED = "native launched";
+
+	private static final int CAPACITY = 32;
+
+	private static final class Budget {
+		final String from;
+		final String to;
+		final long maxMillis;
+
+		Budget(String from, String to, long maxMillis) {
+			this.from = from;
+			this.to = to;
+			this.maxMillis = maxMillis;
+		}
+	}
+
+	/* the java side phases of the launch, the copy itself has no budget */
+	private static final Budget[] BUDGETS = {
+			new Budget(PROCESS_START, ON_CREATE, 800),
+			new Budget(ON_CREATE, STATE_LOADED, 150),
+			new Budget(STATE_LOADED, COPY_CHECKED, 50),
+			new Budget(COPY_FINISHED, NATIVE_LAUNCHED, 100),
+	};
+
+	private static final String[] sNames = new String[CAPACITY];
+	private static final long[] sTimes = new long[CAPACITY];
+	private static int sCount;
+
+	private StartupTrace() {
+	}
+
+	static synchronized void mark(String name, long elapsedMillis) {
+		sNames[sCount % CAPACITY] = name;
+		sTimes[sCount % CAPACITY] = elapsedMillis;
+		sCount++;
+	}
+
+	static synchronized void clear() {
+		sCount = 0;
+	}
+
+	/**
+	 * @return the milestones relative to the first one still in the buffer,
+	 * followed by the phases that have a budget
+	 */
+	static synchronized String report() {
+		var names = names();
+		var times = times();
+		int size = names.length;
+		var sb = new StringBuilder("milestones:\n");
+		for (int i = 0; i < size; i++) {
+			sb.append(String.format(Locale.ROOT, "  +%6d ms  %s", times[i] - times[0], names[i]));
+			if (i > 0)
+				sb.append(String.format(Locale.ROOT, " (+%d ms)", times[i] - times[i - 1]));
+			sb.append('\n');
+		}
+		sb.append("budgets:\n");
+		for (Budget budget : BUDGETS) {
+			long elapsed = phase(names, times, budget.from, budget.to);
+			if (elapsed < 0)
+				continue;
+			sb.append(String.format(Locale.ROOT, "  %s -> %s: %d ms of %d ms%s\n", budget.from, budget.to, elapsed,
+					budget.maxMillis, elapsed > budget.maxMillis ? ", OVER BUDGET" : ""));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return true if none of the recorded phases is over its budget
+	 */
+	static synchronized boolean withinBudgets() {
+		var names = names();
+		var times = times();
+		for (Budget budget : BUDGETS) {
+			if (phase(names, times, budget.from, budget.to) > budget.maxMillis)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the budget of the phase in milliseconds, or -1 if it has none
+	 */
+	static long budget(String from, String to) {
+		for (Budget budget : BUDGETS) {
+			if (budget.from.equals(from) && budget.to.equals(to))
+				return budget.maxMillis;
+		}
+		return -1;
+	}
+
+	/* the buffer contents, oldest first */
+	private static String[] names() {
+		int size = Math.min(sCount, CAPACITY);
+		var names = new String[size];
+		for (int i = 0; i < size; i++)
+			names[i] = sNames[(sCount - size + i) % CAPACITY];
+		return names;
+	}
+
+	private static long[] times() {
+		int size = Math.min(sCount, CAPACITY);
+		var times = new long[size];
+		for (int i = 0; i < size; i++)
+			times[i] = sTimes[(sCount - size + i) % CAPACITY];
+		return times;
+	}
+
+	/**
+	 * @return the time from the last "from" milestone to the first "to" one
+	 * after it, or -1 if the phase wasn't recorded
+	 */
+	private static long phase(String[] names, long[] times, String from, String to) {
+		int start = -1;
+		for (int i = names.length - 1; i >= 0 && start < 0; i--) {
+			if (names[i].equals(from))
+				start = i;
+		}
+		if (start < 0)
+			return -1;
+		for (int i = start + 1; i < names.length; i++) {
+			if (names[i].equals(to))
+				return times[i] - times[start];
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,133 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetManifestTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] hash(int seed) {
+		var hash = new byte[AssetManifest.HASH_SIZE];
+		Arrays.fill(hash, (byte) seed);
+		return hash;
+	}
+
+	/* not in byte order, save sorts them */
+	private static final AssetManifest.Entry[] ENTRIES = {
+			new AssetManifest.Entry("script/c1234.lua", AssetManifest.FLAG_CRITICAL, 1234, hash(1)),
+			new AssetManifest.Entry("pics", AssetManifest.FLAG_DIRECTORY, 0, hash(0)),
+			new AssetManifest.Entry("deck/日本語.ydk", 0, 42, hash(2)),
+			new AssetManifest.Entry("pics/field/a b.jpg", AssetManifest.FLAG_OBJECT | AssetManifest.FLAG_DIRECT, 70000, hash(3)),
+			new AssetManifest.Entry("script", AssetManifest.FLAG_DIRECTORY, 0, hash(0)),
+	};
+
+	private AssetManifest saveAndLoad() throws IOException {
+		var file = folder.newFile("manifest");
+		AssetManifest.save(file, Arrays.asList(ENTRIES));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		return AssetManifest.load(file);
+	}
+
+	@Test
+	public void saveAndLoadKeepsTheEntries() throws IOException {
+		var manifest = saveAndLoad();
+		assertEquals(ENTRIES.length, manifest.size());
+		for (AssetManifest.Entry expected : ENTRIES) {
+			var entry = manifest.get(expected.path);
+			assertEquals(expected.path, entry.path);
+			assertEquals(expected.flags, entry.flags);
+			assertEquals(expected.size, entry.size);
+			assertArrayEquals(expected.hash, entry.hash);
+			assertTrue(expected.sameContent(entry));
+		}
+	}
+
+	@Test
+	public void entriesAreInByteOrder() throws IOException {
+		var manifest = saveAndLoad();
+		assertEquals("deck/日本語.ydk", manifest.path(0));
+		assertEquals("pics", manifest.path(1));
+		assertEquals("pics/field/a b.jpg", manifest.path(2));
+		assertEquals("script", manifest.path(3));
+		assertEquals("script/c1234.lua", manifest.path(4));
+		assertEquals(70000, manifest.fileSize(2));
+		assertEquals(AssetManifest.FLAG_DIRECTORY, manifest.flags(3));
+	}
+
+	@Test
+	public void find() throws IOException {
+		var manifest = saveAndLoad();
+		for (int i = 0; i < manifest.size(); i++)
+			assertEquals(i, manifest.find(manifest.path(i)));
+		assertTrue(manifest.find("script/c9999.lua") < 0);
+		assertTrue(manifest.find("") < 0);
+		assertTrue(manifest.find("zzz") < 0);
+		assertFalse(manifest.contains("pics/field"));
+		assertNull(manifest.get("pics/field"));
+	}
+
+	@Test
+	public void readMatchesLoad() throws IOException {
+		var file = folder.newFile("manifest");
+		AssetManifest.save(file, Arrays.asList(ENTRIES));
+		var manifest = AssetManifest.read(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+		assertEquals(ENTRIES.length, manifest.size());
+		assertTrue(manifest.contains("deck/日本語.ydk"));
+	}
+
+	@Test
+	public void emptyManifest() throws IOException {
+		var file = folder.newFile("manifest");
+		AssetManifest.save(file, Arrays.<AssetManifest.Entry>asList());
+		var manifest = AssetManifest.load(file);
+		assertEquals(0, manifest.size());
+		assertTrue(manifest.find("pics") < 0);
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		var file = folder.newFile("manifest");
+		try (var out = new FileOutputStream(file)) {
+			out.write("not a manifest at all".getBytes("UTF-8"));
+		}
+		try {
+			AssetManifest.load(file);
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void assetPaths() {
+		assertEquals("defaults/script/c1234.lua", AssetManifest.assetPath("defaults", ENTRIES[0]));
+		assertEquals("objects/" + AssetManifest.toHex(hash(3)) + ".jpg", AssetManifest.assetPath("defaults", ENTRIES[3]));
+		assertEquals("patches/" + AssetManifest.toHex(hash(2)) + "-" + AssetManifest.toHex(hash(1)),
+				AssetManifest.patchPath(hash(2), ENTRIES[0]));
+		assertEquals("0303030303030303030303030303030303030303", AssetManifest.toHex(hash(3)));
+	}
+
+	@Test
+	public void extension() {
+		assertEquals(".jpg", AssetManifest.extension("pics/field/a b.jpg"));
+		assertEquals(".gz", AssetManifest.extension("a.tar.gz"));
+		assertEquals("", AssetManifest.extension("fonts/.nomedia"));
+		assertEquals("", AssetManifest.extension("my.folder/README"));
+		assertEquals("", AssetManifest.extension("script"));
+	}
+}
@@ -0,0 +1,71 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetVerifierTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] content(int seed, int size) {
+		var content = new byte[size];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private static byte[] sha1(byte[] content) throws Exception {
+		return MessageDigest.getInstance("SHA-1").digest(content);
+	}
+
+	@Test
+	public void sha1OfAFile() throws Exception {
+		// larger than a chunk, read in several
+		var content = content(1, 600000);
+		var file = folder.newFile("a");
+		Files.write(file.toPath(), content);
+		assertArrayEquals(sha1(content), AssetVerifier.sha1(file));
+		var empty = folder.newFile("empty");
+		assertArrayEquals(sha1(new byte[0]), AssetVerifier.sha1(empty));
+	}
+
+	@Test
+	public void findsTheMismatchedFiles() throws Exception {
+		var workingDir = folder.newFolder("EDOPro");
+		new File(workingDir, "pics").mkdirs();
+		var entries = new ArrayList<AssetManifest.Entry>();
+		var paths = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			var path = "pics/" + i + ".jpg";
+			var content = content(i, 1000 + i * 5000);
+			entries.add(new AssetManifest.Entry(path, 0, content.length, sha1(content)));
+			paths.add(path);
+			if (i == 3)
+				content[500] ^= 1;
+			if (i == 5)
+				content = Arrays.copyOf(content, content.length - 1);
+			if (i != 8)
+				Files.write(new File(workingDir, path).toPath(), content);
+		}
+		var manifestFile = folder.newFile("manifest");
+		AssetManifest.save(manifestFile, entries);
+		var manifest = AssetManifest.load(manifestFile);
+
+		List<String> mismatched = new AssetVerifier(manifest, workingDir.getPath(), 4).verify(paths);
+		// changed, truncated and missing
+		assertEquals(Set.of("pics/3.jpg", "pics/5.jpg", "pics/8.jpg"), new HashSet<>(mismatched));
+	}
+}
@@ -0,0 +1,91 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChannelTransferTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] content;
+	private File source;
+
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[300000];
+		new Random(1).nextBytes(content);
+		source = folder.newFile("source");
+		Files.write(source.toPath(), content);
+	}
+
+	@Test
+	public void copiesTheRangeToAFile() throws IOException {
+		var target = folder.newFile("target");
+		try (var in = new FileInputStream(source); var out = new FileOutputStream(target)) {
+			ChannelTransfer.copy(in.getChannel(), 1000, 200000, out.getChannel());
+		}
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 201000), Files.readAllBytes(target.toPath()));
+	}
+
+	@Test
+	public void finishesWithABufferWhenTransferToStops() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var sink = Channels.newChannel(bytes);
+		// the second and third writes take nothing, the first transferTo stops
+		// after one chunk and the next one returns 0
+		var stalling = new WritableByteChannel() {
+			int writes;
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				if (++writes == 2 || writes == 3)
+					return 0;
+				return sink.write(src);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		boolean transferred;
+		try (var in = new FileInputStream(source)) {
+			transferred = ChannelTransfer.copy(in.getChannel(), 0, content.length, stalling);
+		}
+		assertFalse(transferred);
+		assertArrayEquals(content, bytes.toByteArray());
+	}
+
+	@Test
+	public void sourceEndingEarlyFails() throws IOException {
+		try (var in = new FileInputStream(source); var out = new FileOutputStream(folder.newFile("target"))) {
+			ChannelTransfer.copy(in.getChannel(), content.length - 10, 20, out.getChannel());
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("10 bytes left"));
+		}
+	}
+}
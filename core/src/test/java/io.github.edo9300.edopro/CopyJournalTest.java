@@ -0,0 +1,98 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CopyJournalTest {
+	private static final String WORKING_DIR = "/storage/emulated/0/EDOPro";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private static byte[] hash(int seed) {
+		var hash = new byte[AssetManifest.HASH_SIZE];
+		Arrays.fill(hash, (byte) seed);
+		return hash;
+	}
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "copy_journal");
+	}
+
+	@Test
+	public void resumesTheRecordedFiles() throws IOException {
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			assertEquals(0, journal.size());
+			journal.record("script/c1234.lua", hash(1));
+			journal.record("deck/日本語.ydk", hash(2));
+		}
+		try (var journal = new CopyJournal(file, WORKING_DIR, true)) {
+			assertEquals(2, journal.size());
+			assertTrue(journal.isDone("script/c1234.lua", hash(1)));
+			assertTrue(journal.isDone("deck/日本語.ydk", hash(2)));
+			assertFalse("the content changed since", journal.isDone("script/c1234.lua", hash(3)));
+			assertFalse(journal.isDone("strings.conf", hash(1)));
+			journal.record("strings.conf", hash(4));
+		}
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			assertEquals(3, journal.size());
+			assertTrue(journal.isDone("strings.conf", hash(4)));
+		}
+	}
+
+	@Test
+	public void anotherWorkingDirStartsOver() throws IOException {
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			journal.record("script/c1234.lua", hash(1));
+		}
+		try (var journal = new CopyJournal(file, "/storage/1234-5678/EDOPro", false)) {
+			assertEquals(0, journal.size());
+			assertFalse(journal.isDone("script/c1234.lua", hash(1)));
+		}
+	}
+
+	@Test
+	public void ignoresATornLine() throws IOException {
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			journal.record("script/c1234.lua", hash(1));
+		}
+		try (var out = new FileOutputStream(file, true)) {
+			out.write((AssetManifest.toHex(hash(2)) + "\tstrings.co").getBytes("UTF-8"));
+		}
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			assertEquals(1, journal.size());
+			assertFalse(journal.isDone("strings.co", hash(2)));
+			journal.record("strings.conf", hash(2));
+		}
+		try (var journal = new CopyJournal(file, WORKING_DIR, false)) {
+			assertEquals(2, journal.size());
+			assertTrue(journal.isDone("script/c1234.lua", hash(1)));
+			assertTrue(journal.isDone("strings.conf", hash(2)));
+		}
+	}
+
+	@Test
+	public void delete() throws IOException {
+		var journal = new CopyJournal(file, WORKING_DIR, false);
+		journal.record("script/c1234.lua", hash(1));
+		journal.delete();
+		assertFalse(file.exists());
+		try (var restarted = new CopyJournal(file, WORKING_DIR, false)) {
+			assertEquals(0, restarted.size());
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CopySchedulerTest {
+	private static final long LARGE = CopyScheduler.SMALL_FILE_SIZE;
+
+	private static List<String> paths(List<ParallelCopier.Job> batch) {
+		var paths = new ArrayList<String>();
+		for (ParallelCopier.Job job : batch)
+			paths.add(job.path);
+		return paths;
+	}
+
+	@Test
+	public void largeFilesGoBiggestFirst() {
+		var scheduler = new CopyScheduler(Arrays.asList(
+				new ParallelCopier.Job("a.png", LARGE),
+				new ParallelCopier.Job("b.png", LARGE * 3),
+				new ParallelCopier.Job("c.png", LARGE * 2)));
+		assertEquals(List.of("b.png"), paths(scheduler.next(true)));
+		assertEquals(List.of("c.png"), paths(scheduler.next(true)));
+		assertEquals("without small files the large ones are handed out anyway",
+				List.of("a.png"), paths(scheduler.next(false)));
+		assertTrue(scheduler.next(true).isEmpty());
+	}
+
+	@Test
+	public void smallFilesGoInBatchesInManifestOrder() {
+		var jobs = new ArrayList<ParallelCopier.Job>();
+		for (int i = 0; i < CopyScheduler.SMALL_BATCH_FILES + 8; i++)
+			jobs.add(new ParallelCopier.Job(String.format("script/c%03d.lua", i), 100));
+		jobs.add(new ParallelCopier.Job("big.png", LARGE));
+		var scheduler = new CopyScheduler(jobs);
+
+		var batch = scheduler.next(false);
+		assertEquals(CopyScheduler.SMALL_BATCH_FILES, batch.size());
+		for (int i = 0; i < batch.size(); i++)
+			assertSame(jobs.get(i), batch.get(i));
+		assertEquals(List.of("big.png"), paths(scheduler.next(true)));
+		assertEquals(8, scheduler.next(true).size());
+		assertTrue(scheduler.next(false).isEmpty());
+	}
+
+	@Test
+	public void smallBatchesAreBoundedInBytes() {
+		long size = CopyScheduler.SMALL_FILE_SIZE - 1;
+		var jobs = new ArrayList<ParallelCopier.Job>();
+		for (int i = 0; i < 8; i++)
+			jobs.add(new ParallelCopier.Job("pics/" + i + ".jpg", size));
+		var scheduler = new CopyScheduler(jobs);
+		int expected = (int) ((CopyScheduler.SMALL_BATCH_BYTES + size - 1) / size);
+		assertEquals(expected, scheduler.next(false).size());
+	}
+
+	@Test
+	public void criticalFilesGoFirst() {
+		var scheduler = new CopyScheduler(Arrays.asList(
+				new ParallelCopier.Job("pics/huge.png", LARGE * 10),
+				new ParallelCopier.Job("sound/a.ogg", 100),
+				new ParallelCopier.Job("strings.conf", 100, CopyScheduler.PRIORITY_CRITICAL),
+				new ParallelCopier.Job("fonts/font.ttf", LARGE, CopyScheduler.PRIORITY_CRITICAL)));
+		assertEquals(List.of("fonts/font.ttf"), paths(scheduler.next(true)));
+		assertEquals(List.of("strings.conf"), paths(scheduler.next(true)));
+		assertEquals(List.of("pics/huge.png"), paths(scheduler.next(true)));
+		assertEquals(List.of("sound/a.ogg"), paths(scheduler.next(true)));
+	}
+
+	@Test
+	public void promotedFilesGoBeforeEverything() {
+		var scheduler = new CopyScheduler(Arrays.asList(
+				new ParallelCopier.Job("strings.conf", 100, CopyScheduler.PRIORITY_CRITICAL),
+				new ParallelCopier.Job("pics/a.jpg", 100),
+				new ParallelCopier.Job("pics/b.jpg", 100)));
+		assertTrue(scheduler.promote("pics/a.jpg"));
+		assertTrue(scheduler.promote("pics/b.jpg"));
+		assertEquals("the latest promotion first", List.of("pics/b.jpg"), paths(scheduler.next(false)));
+		assertEquals(List.of("pics/a.jpg"), paths(scheduler.next(false)));
+		assertEquals("not handed out twice", List.of("strings.conf"), paths(scheduler.next(false)));
+		assertTrue(scheduler.next(false).isEmpty());
+		assertFalse(scheduler.promote("pics/a.jpg"));
+	}
+
+	@Test
+	public void claimedFilesAreNotHandedOut() {
+		var job = new ParallelCopier.Job("pics/a.jpg", 100);
+		var scheduler = new CopyScheduler(Arrays.asList(job, new ParallelCopier.Job("pics/b.jpg", 100)));
+		assertSame(job, scheduler.claim("pics/a.jpg"));
+		assertNull(scheduler.claim("pics/a.jpg"));
+		assertEquals(List.of("pics/b.jpg"), paths(scheduler.next(false)));
+	}
+
+	@Test
+	public void clear() {
+		var scheduler = new CopyScheduler(Arrays.asList(
+				new ParallelCopier.Job("pics/a.jpg", 100),
+				new ParallelCopier.Job("pics/b.png", LARGE)));
+		scheduler.clear();
+		assertTrue(scheduler.next(true).isEmpty());
+		assertTrue(scheduler.next(false).isEmpty());
+	}
+}
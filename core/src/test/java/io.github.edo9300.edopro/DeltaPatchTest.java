@@ -0,0 +1,178 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeltaPatchTest {
+	private static final String PATCH = "patches/test";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final FileSink SINK = new FileSink() {
+		@Override
+		public boolean makeDirectory(String path) {
+			return new File(path).mkdirs();
+		}
+
+		@Override
+		public boolean delete(String path) {
+			return new File(path).delete();
+		}
+
+		@Override
+		public void preallocate(FileDescriptor fd, long size) {
+		}
+	};
+
+	private byte[] oldContent;
+	private byte[] newContent;
+	private byte[] patch;
+	private File file;
+
+	private static byte[] sha1(byte[] content) throws Exception {
+		return MessageDigest.getInstance("SHA-1").digest(content);
+	}
+
+	/* the new content is the old one with its middle replaced and twice as much appended */
+	@Before
+	public void setUp() throws Exception {
+		oldContent = new byte[200000];
+		new Random(1).nextBytes(oldContent);
+		var literal = "the changed part".getBytes("UTF-8");
+		var out = new ByteArrayOutputStream();
+		out.write(oldContent, 0, 4000);
+		out.write(literal);
+		out.write(oldContent, 6000, oldContent.length - 6000);
+		out.write(oldContent, 100000, 100000);
+		newContent = out.toByteArray();
+
+		var bytes = new ByteArrayOutputStream();
+		var data = new DataOutputStream(bytes);
+		data.writeInt(DeltaPatch.MAGIC);
+		data.writeInt(DeltaPatch.VERSION);
+		data.write(sha1(oldContent));
+		data.write(sha1(newContent));
+		data.writeLong(newContent.length);
+		data.write(0);
+		data.writeLong(0);
+		data.writeInt(4000);
+		data.write(1);
+		data.writeInt(literal.length);
+		data.write(literal);
+		data.write(0);
+		data.writeLong(6000);
+		data.writeInt(oldContent.length - 6000);
+		data.write(0);
+		data.writeLong(100000);
+		data.writeInt(100000);
+		data.flush();
+		patch = bytes.toByteArray();
+
+		file = folder.newFile("strings.conf");
+		Files.write(file.toPath(), oldContent);
+	}
+
+	private void apply(byte[] patch, byte[] oldHash, byte[] newHash) throws IOException {
+		DeltaPatch.apply(path -> {
+			assertEquals(PATCH, path);
+			return new ByteArrayInputStream(patch);
+		}, SINK, PATCH, file, oldHash, newHash);
+	}
+
+	private void assertUntouched() throws IOException {
+		assertArrayEquals(oldContent, Files.readAllBytes(file.toPath()));
+		assertFalse(new File(file.getPath() + ".patch").exists());
+	}
+
+	@Test
+	public void apply() throws Exception {
+		apply(patch, sha1(oldContent), sha1(newContent));
+		assertArrayEquals(newContent, Files.readAllBytes(file.toPath()));
+		assertFalse(new File(file.getPath() + ".patch").exists());
+	}
+
+	@Test
+	public void patchForAnotherVersion() throws Exception {
+		var otherOld = sha1("another version".getBytes("UTF-8"));
+		try {
+			apply(patch, otherOld, sha1(newContent));
+			fail();
+		} catch (IOException e) {
+			assertEquals("patch is for another version", e.getMessage());
+		}
+		assertUntouched();
+	}
+
+	@Test
+	public void modifiedBase() throws Exception {
+		oldContent[10] ^= 1;
+		Files.write(file.toPath(), oldContent);
+		try {
+			apply(patch, patchOldHash(), sha1(newContent));
+			fail();
+		} catch (IOException e) {
+			assertEquals("installed file was modified", e.getMessage());
+		}
+		assertUntouched();
+	}
+
+	@Test
+	public void corruptPatch() throws Exception {
+		var corrupt = patch.clone();
+		// a byte of the literal data, past the header and the first copy op
+		corrupt[8 + 20 + 20 + 8 + 13 + 5 + 3] ^= 1;
+		try {
+			apply(corrupt, sha1(oldContent), sha1(newContent));
+			fail();
+		} catch (IOException e) {
+			assertEquals("patched file doesn't match", e.getMessage());
+		}
+		assertUntouched();
+	}
+
+	@Test
+	public void truncatedPatch() throws Exception {
+		try {
+			apply(Arrays.copyOf(patch, patch.length - 5), sha1(oldContent), sha1(newContent));
+			fail();
+		} catch (IOException expected) {
+		}
+		assertUntouched();
+	}
+
+	@Test
+	public void notAPatch() throws Exception {
+		var garbage = patch.clone();
+		garbage[0] = 0;
+		try {
+			apply(garbage, sha1(oldContent), sha1(newContent));
+			fail();
+		} catch (IOException e) {
+			assertEquals("not a patch", e.getMessage());
+		}
+		assertUntouched();
+	}
+
+	private byte[] patchOldHash() {
+		return Arrays.copyOfRange(patch, 8, 8 + AssetManifest.HASH_SIZE);
+	}
+}
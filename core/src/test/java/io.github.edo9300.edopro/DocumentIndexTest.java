@@ -0,0 +1,99 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class DocumentIndexTest {
+	private static final String ROOT = "content://com.android.externalstorage.documents/tree/primary%3AEDOPro/document/primary%3AEDOPro";
+
+	@Test
+	public void keys() {
+		assertEquals("deck/a.ydk", DocumentIndex.key(ROOT, ROOT + "/deck/a.ydk/"));
+		assertEquals("deck/a.ydk", DocumentIndex.key(ROOT, "//deck/a.ydk"));
+		assertEquals("", DocumentIndex.key(ROOT, ROOT));
+		assertEquals("", DocumentIndex.key(ROOT, "/"));
+	}
+
+	@Test
+	public void encodedUrisShareTheKeyOfTheirPath() {
+		assertEquals("deck/a b.ydk", DocumentIndex.key(ROOT, ROOT + "%2Fdeck%2Fa%20b.ydk"));
+		assertEquals("deck/a b.ydk", DocumentIndex.key(ROOT, "/deck/a b.ydk"));
+		assertEquals("deck", DocumentIndex.key(ROOT, ROOT + "%2Fdeck%2F"));
+		assertEquals("deck/a.ydk", DocumentIndex.trim("/deck/a.ydk/"));
+	}
+
+	@Test
+	public void parents() {
+		assertEquals("pics/field", DocumentIndex.parent("pics/field/a.jpg"));
+		assertEquals("", DocumentIndex.parent("pics"));
+		assertEquals("", DocumentIndex.parent(""));
+	}
+
+	@Test
+	public void unknownDoesNotReplaceAKnownType() {
+		var index = new DocumentIndex();
+		var file = index.put("deck/a.ydk", "uri", DocumentIndex.Type.FILE);
+		assertSame(file, index.put("deck/a.ydk", "uri", DocumentIndex.Type.UNKNOWN));
+		assertEquals(DocumentIndex.Type.FILE, index.get("deck/a.ydk").type);
+		index.put("deck/a.ydk", "uri", DocumentIndex.Type.FOLDER);
+		assertEquals(DocumentIndex.Type.FOLDER, index.get("deck/a.ydk").type);
+	}
+
+	@Test
+	public void childrenOfAListing() {
+		var index = new DocumentIndex();
+		var folderUri = ROOT + "%2Fpics";
+		index.putChildren("pics", folderUri + "%2F", new String[]{"field/", "a b.jpg"});
+		var field = index.get("pics/field");
+		assertEquals(DocumentIndex.Type.FOLDER, field.type);
+		assertEquals(folderUri + "%2Ffield", field.uri);
+		var file = index.get("pics/a b.jpg");
+		assertEquals(DocumentIndex.Type.FILE, file.type);
+		assertEquals(folderUri + "%2Fa%20b.jpg", file.uri);
+
+		index.putChildren("", ROOT, new String[]{"deck/"});
+		assertEquals(ROOT + "%2Fdeck", index.get("deck").uri);
+	}
+
+	@Test
+	public void removeDropsTheDescendants() {
+		var index = new DocumentIndex();
+		index.put("pics", "1", DocumentIndex.Type.FOLDER);
+		index.put("pics/field", "2", DocumentIndex.Type.FOLDER);
+		index.put("pics/field/a.jpg", "3", DocumentIndex.Type.FILE);
+		index.put("pics2", "4", DocumentIndex.Type.FOLDER);
+		index.put("pics2/b.jpg", "5", DocumentIndex.Type.FILE);
+		index.remove("pics");
+		assertNull(index.get("pics"));
+		assertNull(index.get("pics/field"));
+		assertNull(index.get("pics/field/a.jpg"));
+		assertEquals("4", index.get("pics2").uri);
+		assertEquals("5", index.get("pics2/b.jpg").uri);
+	}
+
+	@Test
+	public void removingTheRootDropsEverything() {
+		var index = new DocumentIndex();
+		index.put("", "0", DocumentIndex.Type.FOLDER);
+		index.put("deck", "1", DocumentIndex.Type.FOLDER);
+		index.put("deck/a.ydk", "2", DocumentIndex.Type.FILE);
+		index.remove("");
+		assertNull(index.get(""));
+		assertNull(index.get("deck"));
+		assertNull(index.get("deck/a.ydk"));
+	}
+
+	@Test
+	public void stats() {
+		var index = new DocumentIndex();
+		index.put("pics", "1", DocumentIndex.Type.FOLDER);
+		index.get("pics");
+		index.get("deck");
+		assertEquals("1 hits, 1 misses, 1 paths", index.stats());
+		index.clear();
+		assertNull(index.get("pics"));
+	}
+}
@@ -0,0 +1,85 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class DocumentPathsTest {
+	private static final String ROOT = "content://com.android.externalstorage.documents/tree/primary%3AEDOPro/document/primary%3AEDOPro";
+
+	/* the expected values are what android.net.Uri.encode returns for the input */
+	@Test
+	public void encodeMatchesUri() {
+		assertEquals("script%2Fc1234.lua", DocumentPaths.encode("script/c1234.lua"));
+		assertEquals("pics%2Ffield%2Fa%20b.jpg", DocumentPaths.encode("pics/field/a b.jpg"));
+		assertEquals("deck%2F%E6%97%A5%E6%9C%AC%E8%AA%9E.ydk", DocumentPaths.encode("deck/日本語.ydk"));
+		assertEquals("emoji%2F%F0%9F%82%A1.png", DocumentPaths.encode("emoji/🂡.png"));
+		assertEquals("a%252Fb", DocumentPaths.encode("a%2Fb"));
+		assertEquals("x%3Fy%23z%26%3D%2B%24%2C%3B%3A%40", DocumentPaths.encode("x?y#z&=+$,;:@"));
+	}
+
+	@Test
+	public void encodeKeepsUnreservedInput() {
+		var s = "_-!.~'()*aZ09";
+		assertSame(s, DocumentPaths.encode(s));
+	}
+
+	@Test
+	public void decodeRoundTrips() {
+		String[] inputs = {
+				"", "plain", "pics/field/a b.jpg", "deck/日本語.ydk", "a%2Fb", "x?y#z&=+$,;:@",
+				"emoji/🂡🂢.png", "😀",
+		};
+		for (String s : inputs)
+			assertEquals(s, DocumentPaths.decode(DocumentPaths.encode(s)));
+	}
+
+	@Test
+	public void decodeSurrogatePair() {
+		assertEquals("🃡", DocumentPaths.decode("%F0%9F%83%A1"));
+		assertEquals("日", DocumentPaths.decode("%E6%97%A5"));
+		assertEquals("日", DocumentPaths.decode("%e6%97%a5"));
+	}
+
+	@Test
+	public void decodeKeepsUnencodedCharacters() {
+		assertEquals("a+b", DocumentPaths.decode("a+b"));
+		assertEquals("日本%", DocumentPaths.decode("日本%"));
+	}
+
+	/*
+	 * Uri.decode turns these into U+FFFD ("100�", "�\u0000z"),
+	 * the paths of the native client are kept as they are instead
+	 */
+	@Test
+	public void decodeKeepsMalformedEscapes() {
+		assertEquals("100%", DocumentPaths.decode("100%"));
+		assertEquals("%zz", DocumentPaths.decode("%zz"));
+		assertEquals("%4", DocumentPaths.decode("%4"));
+		assertEquals("50% off", DocumentPaths.decode("50% off"));
+	}
+
+	@Test
+	public void normalizeEncodesThePathAsOneSegment() {
+		assertEquals(ROOT + "%2Fdeck%2Fa%20b.ydk", DocumentPaths.normalize(ROOT, "/deck/a b.ydk"));
+		assertEquals(ROOT + "%2Fdeck%2Fa%20b.ydk", DocumentPaths.normalize(ROOT, ROOT + "/deck/a b.ydk"));
+	}
+
+	@Test
+	public void splitParent() {
+		assertArrayEquals(new String[]{ROOT + "%2Fdeck", "a%20b.ydk"},
+				DocumentPaths.splitParent(ROOT + "%2Fdeck%2Fa%20b.ydk"));
+		assertArrayEquals(new String[]{ROOT, "deck"}, DocumentPaths.splitParent(ROOT + "%2Fdeck%2F"));
+	}
+
+	@Test
+	public void documentIds() {
+		assertEquals("primary", DocumentPaths.volumeId("primary:EDOPro/deck"));
+		assertEquals("EDOPro/deck", DocumentPaths.documentPath("primary:EDOPro/deck"));
+		assertEquals("/", DocumentPaths.documentPath("primary:"));
+		assertEquals("/storage/emulated/0/EDOPro/deck", DocumentPaths.fullPath("/storage/emulated/0/", "primary:EDOPro/deck/"));
+		assertEquals("/storage/emulated/0", DocumentPaths.fullPath("/storage/emulated/0", "primary:"));
+	}
+}
@@ -0,0 +1,63 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MissingPathsTest {
+	@Test
+	public void trustedUntilItExpires() {
+		var missing = new MissingPaths(60000);
+		assertFalse(missing.contains("deck/a.ydk"));
+		missing.add("deck/a.ydk");
+		assertTrue(missing.contains("deck/a.ydk"));
+		assertEquals("1 hits, 1 misses, 0 expired", missing.stats());
+	}
+
+	@Test
+	public void expiredEntriesAreDropped() throws InterruptedException {
+		var missing = new MissingPaths(1);
+		missing.add("deck/a.ydk");
+		Thread.sleep(5);
+		assertFalse(missing.contains("deck/a.ydk"));
+		assertFalse(missing.contains("deck/a.ydk"));
+		assertEquals("0 hits, 2 misses, 1 expired", missing.stats());
+	}
+
+	@Test
+	public void removeDropsTheAncestors() {
+		var missing = new MissingPaths(60000);
+		missing.add("");
+		missing.add("pics");
+		missing.add("pics/field");
+		missing.add("pics/field/a.jpg");
+		missing.add("pics/other");
+		missing.add("pics2");
+		missing.remove("pics/field/a.jpg");
+		assertFalse(missing.contains("pics/field/a.jpg"));
+		assertFalse(missing.contains("pics/field"));
+		assertFalse(missing.contains("pics"));
+		assertFalse(missing.contains(""));
+		assertTrue(missing.contains("pics/other"));
+		assertTrue(missing.contains("pics2"));
+	}
+
+	@Test
+	public void removeChildren() {
+		var missing = new MissingPaths(60000);
+		missing.add("pics");
+		missing.add("pics/a.jpg");
+		missing.add("pics/field/b.jpg");
+		missing.add("pics2");
+		missing.removeChildren("pics");
+		assertTrue(missing.contains("pics"));
+		assertFalse(missing.contains("pics/a.jpg"));
+		assertFalse(missing.contains("pics/field/b.jpg"));
+		assertTrue(missing.contains("pics2"));
+		missing.removeChildren("");
+		assertFalse(missing.contains("pics"));
+		assertFalse(missing.contains("pics2"));
+	}
+}
@@ -0,0 +1,71 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ParallelCopierTest {
+	private static List<ParallelCopier.Job> jobs(int count) {
+		var jobs = new ArrayList<ParallelCopier.Job>();
+		for (int i = 0; i < count; i++)
+			jobs.add(new ParallelCopier.Job("file" + i, i * 1000L));
+		return jobs;
+	}
+
+	@Test
+	public void copiesEveryJobOnce() throws InterruptedException {
+		var copied = ConcurrentHashMap.<String>newKeySet();
+		var duplicates = new AtomicInteger();
+		var threads = ConcurrentHashMap.<String>newKeySet();
+		var failed = new ParallelCopier(4, path -> {
+			threads.add(Thread.currentThread().getName());
+			if (!copied.add(path))
+				duplicates.incrementAndGet();
+			return true;
+		}, null).run(jobs(200));
+		assertEquals(Collections.emptyList(), failed);
+		assertEquals(200, copied.size());
+		assertEquals(0, duplicates.get());
+		assertTrue(threads.toString(), threads.size() <= 4);
+	}
+
+	@Test
+	public void reportsTheFailedPaths() throws InterruptedException {
+		var failed = new ParallelCopier(3, path -> !path.endsWith("7"), null).run(jobs(30));
+		assertEquals(Set.of("file7", "file17", "file27"), new HashSet<>(failed));
+	}
+
+	@Test
+	public void progressCountsEveryFile() throws InterruptedException {
+		var calls = new AtomicInteger();
+		var lastFiles = new AtomicInteger();
+		var lastBytes = new AtomicLong();
+		new ParallelCopier(4, path -> path.hashCode() % 2 == 0, (filesDone, bytesDone, path) -> {
+			calls.incrementAndGet();
+			lastFiles.accumulateAndGet(filesDone, Math::max);
+			lastBytes.accumulateAndGet(bytesDone, Math::max);
+		}).run(jobs(50));
+		// failed files count as done too
+		assertEquals(50, calls.get());
+		assertEquals(50, lastFiles.get());
+		assertEquals(49 * 50 / 2 * 1000L, lastBytes.get());
+	}
+
+	@Test
+	public void noJobsStartsNoWorker() throws InterruptedException {
+		var failed = new ParallelCopier(4, path -> {
+			throw new AssertionError(path);
+		}, null).run(new ArrayList<>());
+		assertTrue(failed.isEmpty());
+	}
+}
@@ -0,0 +1,96 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StartupStateTest {
+	private static final String WORKING_DIR = "/storage/emulated/0/EDOPro";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File file(String name) {
+		return new File(folder.getRoot(), name);
+	}
+
+	private void write(String name, String content) throws IOException {
+		Files.write(file(name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void firstRun() {
+		var state = StartupState.load(folder.getRoot());
+		assertNull(state.workingDir);
+		assertEquals(0, state.assetsVersion);
+		assertFalse("nothing to migrate", file(StartupState.FILE_NAME).exists());
+	}
+
+	@Test
+	public void saveAndLoad() throws IOException {
+		new StartupState(WORKING_DIR, 123).save(folder.getRoot());
+		assertFalse(file(StartupState.FILE_NAME + ".tmp").exists());
+		var state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals(123, state.assetsVersion);
+
+		state.withWorkingDir(null).withAssetsVersion(0).save(folder.getRoot());
+		state = StartupState.load(folder.getRoot());
+		assertNull(state.workingDir);
+		assertEquals(0, state.assetsVersion);
+	}
+
+	@Test
+	public void migratesTheLegacyFiles() throws IOException {
+		write("working_dir", WORKING_DIR + "\n");
+		write("assets_copied", "123\n");
+		var state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals(123, state.assetsVersion);
+		assertFalse(file("working_dir").exists());
+		assertFalse(file("assets_copied").exists());
+		assertTrue(file(StartupState.FILE_NAME).exists());
+
+		state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals(123, state.assetsVersion);
+	}
+
+	@Test
+	public void migratesAnInterruptedUpdate() throws IOException {
+		write("working_dir", WORKING_DIR);
+		write("assets_copied", "");
+		var state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals("the copy has to be done again", 0, state.assetsVersion);
+		assertFalse(file("assets_copied").exists());
+	}
+
+	@Test
+	public void newFileWinsOverTheLegacyOnes() throws IOException {
+		new StartupState(WORKING_DIR, 123).save(folder.getRoot());
+		write("working_dir", "/somewhere/else");
+		write("assets_copied", "1");
+		var state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals(123, state.assetsVersion);
+	}
+
+	@Test
+	public void ignoresUnknownAndMalformedLines() throws IOException {
+		write(StartupState.FILE_NAME, "garbage\nfuture_key=1\nworking_dir=" + WORKING_DIR + "\nassets_version=x\n");
+		var state = StartupState.load(folder.getRoot());
+		assertEquals(WORKING_DIR, state.workingDir);
+		assertEquals(0, state.assetsVersion);
+	}
+}
@@ -0,0 +1,90 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StartupTraceTest {
+	@Before
+	public void setUp() {
+		StartupTrace.clear();
+	}
+
+	private static void coldStart(long onCreate, long stateLoaded, long copyChecked, long nativeLaunched) {
+		StartupTrace.mark(StartupTrace.PROCESS_START, 1000);
+		StartupTrace.mark(StartupTrace.ON_CREATE, 1000 + onCreate);
+		StartupTrace.mark(StartupTrace.STATE_LOADED, 1000 + onCreate + stateLoaded);
+		StartupTrace.mark(StartupTrace.COPY_CHECKED, 1000 + onCreate + stateLoaded + copyChecked);
+		StartupTrace.mark(StartupTrace.NATIVE_LAUNCHED, 1000 + onCreate + stateLoaded + copyChecked + nativeLaunched);
+	}
+
+	@Test
+	public void withinBudgets() {
+		coldStart(800, 150, 50, 10);
+		assertTrue(StartupTrace.withinBudgets());
+		var report = StartupTrace.report();
+		assertTrue(report, report.contains("  +     0 ms  process start\n"));
+		assertTrue(report, report.contains("  +   950 ms  state loaded (+150 ms)\n"));
+		assertTrue(report, report.contains("  process start -> onCreate: 800 ms of 800 ms\n"));
+		assertTrue(report, report.contains("  state loaded -> copy check done: 50 ms of 50 ms\n"));
+		assertFalse(report, report.contains("OVER BUDGET"));
+		assertFalse("the copy didn't run", report.contains("copy finished ->"));
+	}
+
+	@Test
+	public void overBudget() {
+		coldStart(100, 151, 10, 10);
+		assertFalse(StartupTrace.withinBudgets());
+		var report = StartupTrace.report();
+		assertTrue(report, report.contains("  onCreate -> state loaded: 151 ms of 150 ms, OVER BUDGET\n"));
+	}
+
+	@Test
+	public void copyToNativeLaunch() {
+		StartupTrace.mark(StartupTrace.ON_CREATE, 0);
+		StartupTrace.mark(StartupTrace.STATE_LOADED, 10);
+		StartupTrace.mark(StartupTrace.COPY_CHECKED, 20);
+		StartupTrace.mark(StartupTrace.COPY_STARTED, 30);
+		StartupTrace.mark(StartupTrace.COPY_FINISHED, 60000);
+		StartupTrace.mark(StartupTrace.NATIVE_LAUNCHED, 60101);
+		assertFalse("the copy itself has no budget", StartupTrace.report().contains("copy started ->"));
+		assertTrue(StartupTrace.report().contains("  copy finished -> native launched: 101 ms of 100 ms, OVER BUDGET\n"));
+		assertFalse(StartupTrace.withinBudgets());
+	}
+
+	@Test
+	public void warmStartUsesTheLatestLaunch() {
+		coldStart(100, 500, 10, 10);
+		assertFalse(StartupTrace.withinBudgets());
+		StartupTrace.mark(StartupTrace.ON_CREATE, 50000);
+		StartupTrace.mark(StartupTrace.STATE_LOADED, 50020);
+		assertTrue(StartupTrace.withinBudgets());
+		assertTrue(StartupTrace.report().contains("  onCreate -> state loaded: 20 ms of 150 ms\n"));
+	}
+
+	@Test
+	public void keepsTheLatestMilestones() {
+		for (int i = 0; i < 40; i++)
+			StartupTrace.mark(i % 2 == 0 ? StartupTrace.ON_CREATE : StartupTrace.STATE_LOADED, i * 10L);
+		var report = StartupTrace.report();
+		var milestones = report.substring(0, report.indexOf("budgets:")).split("\n");
+		assertEquals(1 + 32, milestones.length);
+		assertEquals("  +     0 ms  onCreate", milestones[1]);
+		assertEquals("  +   310 ms  state loaded (+10 ms)", milestones[32]);
+	}
+
+	@Test
+	public void budgets() {
+		assertEquals(150, StartupTrace.budget(StartupTrace.ON_CREATE, StartupTrace.STATE_LOADED));
+		assertEquals(-1, StartupTrace.budget(StartupTrace.COPY_STARTED, StartupTrace.COPY_FINISHED));
+	}
+
+	@Test
+	public void empty() {
+		assertTrue(StartupTrace.withinBudgets());
+		assertEquals("milestones:\nbudgets:\n", StartupTrace.report());
+	}
+}
@@ -0,0 +1,74 @@
+package io.github.edo9300.edopro;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Gives native code direct access to the read only assets that are stored
+ * uncompressed in the apk, so that they don't have to be copied to the
+ * working directory (see DIRECT_ASSETS in build.gradle).
+ */
+public final class AssetAccess {
+	private static volatile AssetManifest sManifest;
+
+	private AssetAccess() {
+	}
+
+	private static AssetManifest getManifest(Context context) throws IOException {
+		var manifest = sManifest;
+		if (manifest == null) {
+			synchronized (AssetAccess.class) {
+				manifest = sManifest;
+				if (manifest == null)
+					sManifest = manifest = AssetCopy.openManifest(context.getApplicationContext().getAssets(), "manifest.bin");
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * @return true if the asset isn't copied to the working directory and
+	 * has to be opened with {@link #openAsset}
+	 */
+	public static boolean isDirectAsset(Context context, String path) {
+		if (!BuildConfig.DIRECT_ASSETS)
+			return false;
+		try {
+			var manifest = getManifest(context);
+			int index = manifest.find(path);
+			return index >= 0 && (manifest.flags(index) & AssetManifest.FLAG_DIRECT) != 0;
+		} catch (IOException e) {
+			Log.e("AssetAccess", "Error on processing manifest.bin " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * opens a read only asset, the path is relative to the working directory
+	 *
+	 * @return {fd, offset, length}: the file is the apk itself and the asset
+	 * is the given range of it, the caller owns the fd and has to close it.
+	 * null if the asset isn't read from the apk
+	 */
+	@SuppressWarnings("unused")
+	public static long[] openAsset(Context context, String path) {
+		if (!isDirectAsset(context, path))
+			return null;
+		AssetManifest.Entry entry;
+		try {
+			entry = getManifest(context).get(path);
+		} catch (IOException e) {
+			return null;
+		}
+		try (var afd = context.getApplicationContext().getAssets().openFd(AssetManifest.assetPath("defaults", entry))) {
+			try (var pfd = afd.getParcelFileDescriptor().dup()) {
+				return new long[]{pfd.detachFd(), afd.getStartOffset(), afd.getLength()};
+			}
+		} catch (IOException e) {
+			Log.e("AssetAccess", "Failed to open " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+}
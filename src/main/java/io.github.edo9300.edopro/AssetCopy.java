@@ -1,11 +1,18 @@
 package io.github.edo9300.edopro;
 
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
@@ -13,15 +20,25 @@ import android.view.WindowManager;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import java.io.BufferedReader;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Vector;
+import java.nio.channels.FileChannel;
 
 public class AssetCopy extends Activity {
-	static {
-		System.loadLibrary("assetcopier");
+	private static boolean sLibraryLoaded;
+
+	/**
+	 * loads libassetcopier, called by the copy before using the native
+	 * methods so that the ui thread never reads the library from the disk
+	 */
+	static synchronized void loadLibrary() {
+		if (!sLibraryLoaded) {
+			System.loadLibrary("assetcopier");
+			sLibraryLoaded = true;
+		}
 	}
 
 	public static native boolean makeDirectory(String path);
@@ -30,14 +47,23 @@ public class AssetCopy extends Activity {
 
 	public static native boolean copyAssetToDestination(AssetManager assetManager, String source, String destination);
 
+	/* the copy didn't start because of the free space, the version isn't marked as copied */
+	static final int RESULT_NO_SPACE = RESULT_FIRST_USER;
+
 	private ProgressBar m_ProgressBar;
 	private TextView m_Filename;
-	private copyAssetTask m_AssetCopy;
-	private String workingDir;
-	private boolean isUpdate;
+	private boolean m_ErrorShown;
 	//private static native void assetsMutexUnlock();
 
+	private final BroadcastReceiver m_Receiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			updateProgress();
+		}
+	};
+
 	public boolean copyAsset(String source, String destination) {
+		loadLibrary();
 		return copyAssetToDestination(getAssets(), source, destination);
 	}
 
@@ -49,8 +75,14 @@ public class AssetCopy extends Activity {
 		Bundle b = getIntent().getExtras();
 		String _workingDir = "_workingDir";
 		boolean _isUpdate = false;
+		boolean _verify = false;
+		boolean _strictSync = false;
+		int _copyThreads = ParallelCopier.defaultWorkers();
 		if (b != null) {
 			_workingDir = b.getString("workingDir");
+			_copyThreads = b.getInt("copyThreads", _copyThreads);
+			_verify = b.getBoolean("verify");
+			_strictSync = b.getBoolean("strictSync");
 			////kdiy/////
 			// _isUpdate = b.getBoolean("isUpdate");
 			////kdiy/////
@@ -63,31 +95,68 @@ public class AssetCopy extends Activity {
 		m_ProgressBar.getLayoutParams().width = (int) (displaymetrics.widthPixels * 0.8);
 		m_ProgressBar.invalidate();
 
-		/* check if there's already a copy in progress and reuse in case it is*/
-		AssetCopy prevActivity =
-				(AssetCopy) getLastNonConfigurationInstance();
-		if (prevActivity != null) {
-			m_AssetCopy = prevActivity.m_AssetCopy;
-		} else {
-			workingDir = _workingDir;
-			isUpdate = _isUpdate;
-			m_AssetCopy = new copyAssetTask();
-			m_AssetCopy.execute();
-		}
+		var filter = new IntentFilter();
+		filter.addAction(AssetCopyService.ACTION_PROGRESS);
+		filter.addAction(AssetCopyService.ACTION_FINISHED);
+		LocalBroadcastManager.getInstance(this).registerReceiver(m_Receiver, filter);
+
+		/* the copy runs in the service, if it's already running this only attaches to it */
+		AssetCopyService.start(this, _workingDir, _isUpdate, _verify, _strictSync, _copyThreads);
 	}
 
 	@Override
 	protected void onResume() {
 		super.onResume();
 		makeFullScreen();
+		/* the copy may have progressed or finished while in background */
+		updateProgress();
 	}
 
 	@Override
 	protected void onDestroy() {
 		super.onDestroy();
-		if (m_AssetCopy != null) {
-			m_AssetCopy.cancel(true);
+		LocalBroadcastManager.getInstance(this).unregisterReceiver(m_Receiver);
+	}
+
+	/**
+	 * update progress bar, or return to MainActivity once the game can start
+	 */
+	private void updateProgress() {
+		if (AssetCopyService.getState() != AssetCopyService.State.COPYING) {
+			if (isFinishing() || m_ErrorShown)
+				return;
+			var error = AssetCopyService.getError();
+			if (error == null) {
+				setResult(Activity.RESULT_CANCELED, new Intent());
+				finish();
+				return;
+			}
+			m_ErrorShown = true;
+			new AlertDialog.Builder(this)
+					.setMessage(error)
+					.setCancelable(false)
+					.setPositiveButton("OK", (dialog, id) -> {
+						setResult(RESULT_NO_SPACE, new Intent());
+						finish();
+					})
+					.show();
+			return;
+		}
+		m_ProgressBar.setMax(AssetCopyService.PROGRESS_MAX);
+		m_ProgressBar.setProgress(AssetCopyService.getProgress());
+		long bytesTotal = AssetCopyService.getBytesTotal();
+		long copyStart = AssetCopyService.getCopyStart();
+		if (bytesTotal == 0 || copyStart == 0) {
+			m_Filename.setText(AssetCopyService.getStatus());
+			return;
 		}
+		long bytesDone = AssetCopyService.getBytesDone();
+		long elapsed = SystemClock.elapsedRealtime() - copyStart;
+		long eta = bytesDone > 0 ? elapsed * (bytesTotal - bytesDone) / bytesDone / 1000 : 0;
+		m_Filename.setText(AssetCopyService.getStatus() + "\n" + getString(R.string.copy_progress,
+				Formatter.formatShortFileSize(this, bytesDone),
+				Formatter.formatShortFileSize(this, bytesTotal),
+				DateUtils.formatElapsedTime(eta)));
 	}
 
 	@SuppressWarnings("ObsoleteSdkInt")
@@ -104,150 +173,29 @@ public class AssetCopy extends Activity {
 			makeFullScreen();
 	}
 
-	/* preserve asset copy background task to prevent restart of copying */
-	/* this way of doing it is not recommended for latest android version */
-	/* but the recommended way isn't available on android 2.x */
-	public Object onRetainNonConfigurationInstance() {
-		return this;
-	}
-
-	private class copyAssetTask extends AsyncTask<String, Integer, String> {
-		boolean m_copy_started = false;
-		String m_Foldername = "media";
-		Vector<String> m_foldernames;
-		Vector<String> m_filenames;
-		Vector<String> m_tocopy;
-
-		@Override
-		protected String doInBackground(String... files) {
-			Log.e("AssetCopy", "doInBackground");
-			m_foldernames = new Vector<>();
-			m_filenames = new Vector<>();
-			m_tocopy = new Vector<>();
-
-			// build lists from prepared data
-			BuildFolderList();
-			BuildFileList();
-
-			// scan filelist
-			ProcessFileList();
-
-			// doing work
-			m_copy_started = m_tocopy.size() > 0;
-			m_ProgressBar.setMax(m_tocopy.size());
-
-			for (int i = 0; i < m_tocopy.size(); i++) {
-				String filename = m_tocopy.get(i);
-				String full_source_filename = isUpdate ? "update/" + filename : "defaults/" + filename;
-				publishProgress(i);
-				if (copyAsset(full_source_filename, workingDir + "/" + filename))
-					Log.v("AssetCopy", "Copied file: " + m_tocopy.get(i));
-				else
-					Log.e("AssetCopy", "Copying file: " + m_tocopy.get(i));
-			}
-			return "";
-		}
-
-		/**
-		 * update progress bar
-		 */
-		protected void onProgressUpdate(Integer... progress) {
-			if (m_copy_started) {
-				String todisplay = m_tocopy.get(progress[0]);
-				m_ProgressBar.setProgress(progress[0]);
-				m_Filename.setText(todisplay);
-			} else {
-				String todisplay = m_Foldername;
-				String full_text = "scanning " + todisplay + " ...";
-				m_Filename.setText(full_text);
-			}
-		}
-
-		/**
-		 * check all files and folders in filelist
-		 */
-		void ProcessFileList() {
-
-			for (String current_path : m_filenames) {
-				String FlashPath = workingDir + "/" + current_path;
-				if (isAssetFolder(current_path)) {
-					if (current_path.isEmpty()) {
-						FlashPath = workingDir;
-					}
-					/* store information and update gui */
-					if (isUpdate)
-						m_Foldername = "update/" + current_path;
-					else
-						m_Foldername = "defaults/" + current_path;
-					publishProgress(0);
-					/* open file in order to check if it's a folder */
-					makeDirectory(FlashPath);
-					if (!makeDirectory(FlashPath)) {
-						Log.e("AssetCopy", "\t failed create folder: " +
-								FlashPath);
-					} else {
-						Log.v("AssetCopy", "\t created folder: " +
-								FlashPath);
-					}
-					continue;
-				}
-				if (isUpdate)
-					fileDelete(FlashPath);
-				m_tocopy.add(current_path);
-			}
-		}
-
-		/**
-		 * read list of folders prepared on package build
-		 */
-		void BuildFolderList() {
-			try {
-				InputStream is = getAssets().open(isUpdate ? "indexu.txt" : "index.txt");
-				BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-				String line = reader.readLine();
-				while (line != null) {
-					m_foldernames.add(line);
-					line = reader.readLine();
-				}
-				is.close();
-			} catch (IOException e) {
-				Log.e("AssetCopy", "Error on processing index.txt " + e.getMessage());
-				e.printStackTrace();
-			}
-		}
-
-		/**
-		 * read list of asset files prepared on package build
-		 */
-		@SuppressWarnings("unused")
-		void BuildFileList() {
-			long entrycount = 0;
-			try {
-				InputStream is = getAssets().open(isUpdate ? "filelistu.txt" : "filelist.txt");
-				BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-				String line = reader.readLine();
-				while (line != null) {
-					m_filenames.add(line);
-					line = reader.readLine();
-					entrycount++;
-				}
-				is.close();
-			} catch (IOException e) {
-				Log.e("AssetCopy", "Error on processing filelist.txt " + e.getMessage());
-				e.printStackTrace();
-			}
+	/**
+	 * maps the manifest straight from the apk, it's stored uncompressed
+	 * (see noCompress in build.gradle), otherwise it's read on the heap
+	 */
+	static AssetManifest openManifest(AssetManager assetManager, String name) throws IOException {
+		AssetFileDescriptor afd;
+		try {
+			afd = assetManager.openFd(name);
+		} catch (FileNotFoundException e) {
+			// thrown for compressed assets as well
+			return AssetManifest.read(assetManager.open(name));
 		}
-
-		protected void onPostExecute(String result) {
-			Intent returnIntent = new Intent();
-			setResult(Activity.RESULT_CANCELED, returnIntent);
-			finish();
+		try (afd; var is = afd.createInputStream()) {
+			return AssetManifest.map(is.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					afd.getStartOffset(), afd.getLength()));
 		}
+	}
 
-		boolean isAssetFolder(String path) {
-			return m_foldernames.contains(path);
-		}
+	/**
+	 * the journal exists from the start of a copy until it completes,
+	 * MainActivity uses it to resume a copy interrupted by the process dying
+	 */
+	static File getJournalFile(Context context) {
+		return new File(context.getFilesDir(), "assets_journal");
 	}
-}
\ No newline at end of file
+}
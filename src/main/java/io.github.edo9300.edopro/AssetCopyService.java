@@ -0,0 +1,333 @@
+package io.github.edo9300.edopro;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.format.Formatter;
+
+import androidx.core.app.NotificationCompat;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+/**
+ * Runs the asset copy as a foreground service, so that it keeps going at full
+ * speed while the app is in the background and doesn't depend on the
+ * lifecycle of AssetCopy, which only displays the progress.
+ * <p>
+ * The state of the copy is kept in static fields so that a recreated AssetCopy
+ * can pick it up, and changes are sent with local broadcasts.
+ */
+public class AssetCopyService extends Service {
+	static final String ACTION_PROGRESS = "io.github.edo9300.edopro.ASSET_COPY_PROGRESS";
+	static final String ACTION_FINISHED = "io.github.edo9300.edopro.ASSET_COPY_FINISHED";
+
+	private static final String CHANNEL_ID = "asset_copy";
+	private static final int NOTIFICATION_ID = 1;
+	private static final long NOTIFICATION_INTERVAL_MS = 500;
+	/* one frame at 60 fps, AssetCopy isn't refreshed more often than it can draw */
+	private static final long PROGRESS_INTERVAL_MS = 16;
+	static final int PROGRESS_MAX = 1000;
+
+	enum State {
+		IDLE,
+		/* the game can't start yet, AssetCopy is showing the progress */
+		COPYING,
+		/* the game can start, the non critical files are still being copied */
+		BACKGROUND,
+	}
+
+	private static volatile State sState = State.IDLE;
+	private static volatile String sStatus = "";
+	private static volatile int sFilesDone;
+	private static volatile int sFilesTotal;
+	private static volatile long sBytesDone;
+	private static volatile long sBytesTotal;
+	private static volatile long sCopyStart;
+	private static volatile String sError;
+	/* a verification asked for during the background copy, run once that finishes */
+	private static Intent sQueuedVerify;
+
+	private NotificationCompat.Builder notification;
+	private long lastNotificationUpdate;
+	private long lastProgressUpdate;
+	/* a throttled progress broadcast is sent once the interval is over */
+	private boolean progressPending;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable pendingProgress = this::sendPendingProgress;
+	/* only used on the ui thread, like onStartCommand */
+	private boolean started;
+	private int lastStartId;
+
+	static State getState() {
+		return sState;
+	}
+
+	static String getStatus() {
+		return sStatus;
+	}
+
+	static int getFilesDone() {
+		return sFilesDone;
+	}
+
+	static int getFilesTotal() {
+		return sFilesTotal;
+	}
+
+	static long getBytesDone() {
+		return sBytesDone;
+	}
+
+	static long getBytesTotal() {
+		return sBytesTotal;
+	}
+
+	/**
+	 * @return the elapsedRealtime the first file was copied at, or 0
+	 */
+	static long getCopyStart() {
+		return sCopyStart;
+	}
+
+	/**
+	 * @return why the last copy didn't start, or null
+	 */
+	static String getError() {
+		return sError;
+	}
+
+	/**
+	 * @return the progress out of PROGRESS_MAX, by bytes or by files if
+	 * all the files are empty
+	 */
+	static int getProgress() {
+		long bytesTotal = sBytesTotal;
+		if (bytesTotal > 0)
+			return (int) (sBytesDone * PROGRESS_MAX / bytesTotal);
+		int filesTotal = sFilesTotal;
+		return filesTotal > 0 ? sFilesDone * PROGRESS_MAX / filesTotal : 0;
+	}
+
+	/**
+	 * starts the copy unless one is already running, a verification asked
+	 * for while the non critical files are copied in the background is
+	 * queued and runs after that
+	 */
+	static void start(Context context, String workingDir, boolean isUpdate, boolean verify, boolean strictSync,
+					  int copyThreads) {
+		var intent = new Intent(context, AssetCopyService.class)
+				.putExtra("workingDir", workingDir)
+				.putExtra("isUpdate", isUpdate)
+				.putExtra("verify", verify)
+				.putExtra("strictSync", strictSync)
+				.putExtra("copyThreads", copyThreads);
+		synchronized (AssetCopyService.class) {
+			if (verify && sState == State.BACKGROUND) {
+				resetProgress();
+				sQueuedVerify = intent;
+				sStatus = "waiting for the background copy ...";
+				sState = State.COPYING;
+				return;
+			}
+			if (sState != State.IDLE)
+				return;
+			resetProgress();
+			sState = State.COPYING;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+			context.startForegroundService(intent);
+		else
+			context.startService(intent);
+	}
+
+	private static void resetProgress() {
+		sStatus = "";
+		sFilesDone = 0;
+		sFilesTotal = 0;
+		sBytesDone = 0;
+		sBytesTotal = 0;
+		sCopyStart = 0;
+		sError = null;
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+		startForeground(NOTIFICATION_ID, buildNotification());
+		lastStartId = startId;
+		if (started || intent == null)
+			return START_NOT_STICKY;
+		started = true;
+		// the journal takes care of resuming the copy if the process is killed
+		// (AssetCopy is started again from MainActivity), so the service isn't sticky
+		startWorker(intent);
+		return START_NOT_STICKY;
+	}
+
+	private void startWorker(Intent intent) {
+		var worker = new AssetCopyWorker(this, intent.getStringExtra("workingDir"),
+				intent.getBooleanExtra("isUpdate", false),
+				intent.getBooleanExtra("verify", false),
+				intent.getBooleanExtra("strictSync", false),
+				intent.getIntExtra("copyThreads", ParallelCopier.defaultWorkers()),
+				new AssetCopyWorker.Listener() {
+					@Override
+					public void onScanning(String folder) {
+						sStatus = "scanning " + folder + " ...";
+						broadcastProgress(false);
+					}
+
+					@Override
+					public void onProgress(int filesDone, int filesTotal, long bytesDone, long bytesTotal, String path) {
+						if (sCopyStart == 0)
+							sCopyStart = SystemClock.elapsedRealtime();
+						sStatus = path;
+						sFilesDone = filesDone;
+						sFilesTotal = filesTotal;
+						sBytesDone = bytesDone;
+						sBytesTotal = bytesTotal;
+						updateProgress(filesDone == filesTotal);
+					}
+
+					@Override
+					public void onNoSpace(long required, long available) {
+						sError = getString(R.string.not_enough_space,
+								Formatter.formatShortFileSize(AssetCopyService.this, required),
+								Formatter.formatShortFileSize(AssetCopyService.this, available));
+						finish();
+					}
+
+					@Override
+					public void onFinished(boolean inBackground) {
+						if (inBackground) {
+							sState = State.BACKGROUND;
+							broadcast(ACTION_FINISHED);
+							return;
+						}
+						finish();
+					}
+
+					@Override
+					public void onBackgroundFinished() {
+						Intent queued;
+						synchronized (AssetCopyService.class) {
+							queued = sQueuedVerify;
+							sQueuedVerify = null;
+							if (queued == null) {
+								finish();
+								return;
+							}
+						}
+						startWorker(queued);
+					}
+				});
+		new Thread(worker, "AssetCopyWorker").start();
+	}
+
+	/**
+	 * stops the service on the ui thread, where the commands are delivered.
+	 * A start seeing the idle state can only send its command after that,
+	 * it's then either run by this instance or by a new one, as the service
+	 * is only stopped if no command came since the last one it got
+	 */
+	private void finish() {
+		handler.post(this::stop);
+	}
+
+	private void stop() {
+		synchronized (this) {
+			handler.removeCallbacks(pendingProgress);
+			progressPending = false;
+		}
+		Intent queued;
+		synchronized (AssetCopyService.class) {
+			// queued while the stop was posted
+			queued = sQueuedVerify;
+			sQueuedVerify = null;
+			if (queued == null) {
+				sState = State.IDLE;
+				started = false;
+			}
+		}
+		if (queued != null) {
+			startWorker(queued);
+			return;
+		}
+		broadcast(ACTION_FINISHED);
+		stopForeground(true);
+		stopSelf(lastStartId);
+	}
+
+	private void broadcast(String action) {
+		LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(action));
+	}
+
+	private Notification buildNotification() {
+		if (notification == null) {
+			var manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager.getNotificationChannel(CHANNEL_ID) == null) {
+				manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+						getString(R.string.asset_copy_channel), NotificationManager.IMPORTANCE_LOW));
+			}
+			notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+					.setSmallIcon(R.mipmap.ic_launcher)
+					.setContentTitle(getString(R.string.copying_assets))
+					.setOngoing(true)
+					.setOnlyAlertOnce(true)
+					.setProgress(0, 0, true);
+		}
+		return notification.build();
+	}
+
+	/**
+	 * AssetCopy is refreshed at most every PROGRESS_INTERVAL_MS and the
+	 * notification every NOTIFICATION_INTERVAL_MS, doing it for every file
+	 * would flood the ui thread and the system
+	 */
+	private synchronized void updateProgress(boolean last) {
+		long now = broadcastProgress(last);
+		if (!last && now - lastNotificationUpdate < NOTIFICATION_INTERVAL_MS)
+			return;
+		lastNotificationUpdate = now;
+		notification.setProgress(PROGRESS_MAX, getProgress(), false).setContentText(sStatus);
+		var manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+		manager.notify(NOTIFICATION_ID, notification.build());
+	}
+
+	/**
+	 * tells AssetCopy about the new status at most every
+	 * PROGRESS_INTERVAL_MS, one skipped is sent at the end of the interval
+	 * so the last status is always shown
+	 *
+	 * @return the current elapsedRealtime
+	 */
+	private synchronized long broadcastProgress(boolean last) {
+		long now = SystemClock.elapsedRealtime();
+		long wait = PROGRESS_INTERVAL_MS - (now - lastProgressUpdate);
+		if (last || wait <= 0) {
+			lastProgressUpdate = now;
+			broadcast(ACTION_PROGRESS);
+		} else if (!progressPending) {
+			progressPending = true;
+			handler.postDelayed(pendingProgress, wait);
+		}
+		return now;
+	}
+
+	private synchronized void sendPendingProgress() {
+		progressPending = false;
+		lastProgressUpdate = SystemClock.elapsedRealtime();
+		broadcast(ACTION_PROGRESS);
+	}
+
+	@Override
+	public IBinder onBind(Intent intent) {
+		return null;
+	}
+}
@@ -0,0 +1,688 @@
+package io.github.edo9300.edopro;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.StatFs;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The asset copy pipeline: compares the packaged manifest with the installed
+ * one, creates the folders, copies what changed and saves the new installed
+ * manifest. It has no ties to any activity, AssetCopyService runs it on its
+ * own thread.
+ */
+final class AssetCopyWorker implements Runnable {
+	/*
+	 * media the game only ever reads, copies of these can share their data
+	 * with a hard link. Anything else (configs, databases, scripts, empty
+	 * files) can be rewritten in place and gets its own copy
+	 */
+	private static final HashSet<String> LINKABLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+			".png", ".jpg", ".jpeg", ".webp", ".bmp", ".gif", ".ogg", ".mp3", ".wav", ".flac",
+			".ttf", ".otf", ".fsh", ".vsh"));
+
+	interface Listener {
+		void onScanning(String folder);
+
+		/**
+		 * called from the copy threads after every file
+		 */
+		void onProgress(int filesDone, int filesTotal, long bytesDone, long bytesTotal, String path);
+
+		/**
+		 * the copy didn't start as the files don't fit in the free space
+		 */
+		void onNoSpace(long required, long available);
+
+		/**
+		 * the game can start, if inBackground is true the non critical
+		 * files are still being copied by AssetMaterializer
+		 */
+		void onFinished(boolean inBackground);
+
+		void onBackgroundFinished();
+	}
+
+	private final Context context;
+	private final String workingDir;
+	private final boolean isUpdate;
+	private final boolean verify;
+	private final boolean strictSync;
+	private final int copyThreads;
+	private final Listener listener;
+	private Vector<String> m_tocopy;
+	private Vector<String> m_toverify;
+	private Vector<String> m_failed;
+	/* copied files not synced nor journaled yet, without strict sync */
+	private final ArrayList<String> m_unsynced = new ArrayList<>();
+	/*
+	 * without strict sync, syncs and journals the full batches while the
+	 * copy threads go on. The files are still synced one by one: a journal
+	 * line must not reach the storage before the data of its file, and
+	 * there's no call syncing a whole filesystem to do it once at the end
+	 */
+	private ExecutorService m_syncer;
+	private AssetManifest m_manifest;
+	private AssetManifest m_installed;
+	private CopyJournal m_journal;
+	/* hex sha1 -> a path in the working directory that already has that content */
+	private final ConcurrentHashMap<String, String> m_present = new ConcurrentHashMap<>();
+	private final CopyStats m_stats = new CopyStats();
+	private final FileSink m_sink = new NativeFileSink(m_stats);
+
+	/**
+	 * @param verify hash the files the installed manifest says are up to date
+	 *                   and copy again the ones that don't match
+	 * @param strictSync sync every file before recording it in the journal
+	 *                   instead of in batches, slower but a power loss costs
+	 *                   at most the file being copied
+	 */
+	AssetCopyWorker(Context context, String workingDir, boolean isUpdate, boolean verify, boolean strictSync,
+					int copyThreads, Listener listener) {
+		this.context = context.getApplicationContext();
+		this.workingDir = workingDir;
+		this.isUpdate = isUpdate;
+		this.verify = verify;
+		this.strictSync = strictSync;
+		this.copyThreads = copyThreads;
+		this.listener = listener;
+	}
+
+	@Override
+	public void run() {
+		AssetCopy.loadLibrary();
+		m_tocopy = new Vector<>();
+		m_toverify = new Vector<>();
+		m_failed = new Vector<>();
+		m_stats.setStrictSync(strictSync);
+
+		long start = System.nanoTime();
+		// load the lists prepared on package build
+		if (!LoadManifests()) {
+			listener.onFinished(false);
+			return;
+		}
+
+		// scan filelist
+		ProcessFileList();
+		m_stats.addPhase(CopyStats.Phase.SCAN, System.nanoTime() - start);
+
+		if (verify && !VerifyFiles()) {
+			listener.onFinished(false);
+			return;
+		}
+
+		// fail right away instead of partway through the copy, before deleting anything
+		var removed = RemovedFiles();
+		long required = RequiredBytes() - FreedBytes(removed);
+		long available = AvailableBytes();
+		if (available >= 0 && required > available) {
+			Log.e("AssetCopy", "Not enough space: " + required + " bytes required, " + available + " available");
+			// the journal is kept, the copy is tried again on the next launch
+			if (m_journal != null) {
+				try {
+					m_journal.close();
+				} catch (IOException ignored) {
+				}
+			}
+			listener.onNoSpace(required, available);
+			return;
+		}
+
+		start = System.nanoTime();
+		DeleteRemovedFiles(removed);
+		DeleteReplacedFiles();
+		m_stats.addPhase(CopyStats.Phase.DELETE, System.nanoTime() - start);
+
+		// critical files go first, with lazy copy they're the only ones copied before the game starts
+		var jobs = new ArrayList<ParallelCopier.Job>(m_tocopy.size());
+		var deferred = new ArrayList<ParallelCopier.Job>();
+		long totalBytes = 0;
+		for (String filename : m_tocopy) {
+			int index = m_manifest.find(filename);
+			boolean critical = (m_manifest.flags(index) & AssetManifest.FLAG_CRITICAL) != 0;
+			var job = new ParallelCopier.Job(filename, m_manifest.fileSize(index),
+					critical ? CopyScheduler.PRIORITY_CRITICAL : CopyScheduler.PRIORITY_NORMAL);
+			if (BuildConfig.LAZY_ASSETS && !critical) {
+				deferred.add(job);
+				continue;
+			}
+			jobs.add(job);
+			totalBytes += job.size;
+		}
+
+		// doing work
+		if (!strictSync)
+			m_syncer = Executors.newSingleThreadExecutor();
+		start = System.nanoTime();
+		final int total = jobs.size();
+		final long bytesTotal = totalBytes;
+		var copier = new ParallelCopier(copyThreads, this::CopyFile,
+				(filesDone, bytesDone, path) -> listener.onProgress(filesDone, total, bytesDone, bytesTotal, path));
+		try {
+			m_failed.addAll(copier.run(jobs));
+		} catch (InterruptedException e) {
+			Log.e("AssetCopy", "Copy interrupted");
+			// the batches already handed over are still journaled
+			if (m_syncer != null)
+				m_syncer.shutdown();
+			listener.onFinished(false);
+			return;
+		}
+		m_stats.addPhase(CopyStats.Phase.COPY, System.nanoTime() - start);
+		if (!deferred.isEmpty()) {
+			Log.i("AssetCopy", "Copying " + deferred.size() + " files in the background");
+			final long backgroundStart = System.nanoTime();
+			AssetMaterializer.start(workingDir, deferred, copyThreads, this::CopyFile, failed -> {
+				m_stats.addPhase(CopyStats.Phase.BACKGROUND_COPY, System.nanoTime() - backgroundStart);
+				m_failed.addAll(failed);
+				SyncFiles();
+				SaveManifest();
+				WriteStats();
+				listener.onBackgroundFinished();
+			});
+			listener.onFinished(true);
+			return;
+		}
+		SyncFiles();
+		SaveManifest();
+		WriteStats();
+		listener.onFinished(false);
+	}
+
+	/**
+	 * patch the installed previous version of a file if there's a delta for
+	 * it, or copy it from an installed file with the same content if there's
+	 * any, otherwise with a kernel side transfer if it's stored uncompressed,
+	 * otherwise (or if that fails) with the native copier
+	 */
+	boolean CopyFile(String filename) {
+		var entry = m_manifest.get(filename);
+		String full_source_filename = AssetManifest.assetPath(isUpdate ? "update" : "defaults", entry);
+		String destination = workingDir + "/" + filename;
+		long start = System.nanoTime();
+		CopyStats.Method method = PatchFile(entry, destination);
+		if (method == null) {
+			// never write through the old file, it may be a hard link shared with another asset
+			//noinspection ResultOfMethodCallIgnored
+			new File(destination).delete();
+			method = CopyLocal(entry, destination);
+		}
+		if (method == null && !entry.isCompressed()) {
+			try {
+				method = DirectAssetCopier.copy(context.getAssets(), full_source_filename, destination, m_stats);
+			} catch (IOException e) {
+				Log.w("AssetCopy", "Direct copy failed for " + filename + ": " + e.getMessage());
+			}
+		}
+		if (method == null) {
+			if (!AssetCopy.copyAssetToDestination(context.getAssets(), full_source_filename, destination)) {
+				Log.e("AssetCopy", "Copying file: " + filename);
+				return false;
+			}
+			method = CopyStats.Method.NATIVE;
+		}
+		m_stats.record(method, filename, entry.size, System.nanoTime() - start);
+		m_present.putIfAbsent(AssetManifest.toHex(entry.hash), filename);
+		if (strictSync) {
+			long syncStart = System.nanoTime();
+			if (!SyncFile(filename))
+				return false;
+			m_stats.addFileSync(System.nanoTime() - syncStart);
+			Journal(filename);
+			return true;
+		}
+		List<String> batch = null;
+		synchronized (m_unsynced) {
+			m_unsynced.add(filename);
+			if (m_unsynced.size() >= CopyStats.SYNC_BATCH) {
+				batch = new ArrayList<>(m_unsynced);
+				m_unsynced.clear();
+			}
+		}
+		if (batch != null) {
+			final var files = batch;
+			m_syncer.execute(() -> SyncAndJournal(files, 1));
+		}
+		return true;
+	}
+
+	/**
+	 * flush a copied file to the storage, the copiers only close it
+	 */
+	boolean SyncFile(String filename) {
+		try (var fd = new FileInputStream(workingDir + "/" + filename)) {
+			fd.getFD().sync();
+			return true;
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Syncing file: " + filename + " " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * without strict sync, wait for the batches still being synced and
+	 * flush the last one in parallel, before the installed manifest is committed
+	 */
+	void SyncFiles() {
+		if (m_syncer == null)
+			return;
+		long start = System.nanoTime();
+		m_syncer.shutdown();
+		try {
+			while (!m_syncer.awaitTermination(1, TimeUnit.MINUTES))
+				Log.w("AssetCopy", "Still syncing the copied files");
+		} catch (InterruptedException e) {
+			// the last batch isn't synced, it's recorded as failed
+			Log.e("AssetCopy", "Sync interrupted");
+			Thread.currentThread().interrupt();
+		}
+		List<String> batch;
+		synchronized (m_unsynced) {
+			batch = new ArrayList<>(m_unsynced);
+			m_unsynced.clear();
+		}
+		if (!batch.isEmpty())
+			SyncAndJournal(batch, copyThreads);
+		m_stats.addPhase(CopyStats.Phase.SYNC, System.nanoTime() - start);
+	}
+
+	/**
+	 * flush the files and then their folders, only then are they recorded
+	 * in the journal, a file that can't be synced is copied again on the
+	 * next launch
+	 */
+	void SyncAndJournal(List<String> files, int threads) {
+		var jobs = new ArrayList<ParallelCopier.Job>(files.size());
+		var folders = new HashSet<String>();
+		for (String filename : files) {
+			jobs.add(new ParallelCopier.Job(filename, m_manifest.fileSize(m_manifest.find(filename))));
+			int slash = filename.lastIndexOf('/');
+			folders.add(slash < 0 ? "" : filename.substring(0, slash));
+		}
+		var failed = new HashSet<String>();
+		try {
+			if (threads > 1) {
+				failed.addAll(new ParallelCopier(threads, this::SyncFile, null).run(jobs));
+			} else {
+				for (String filename : files) {
+					if (!SyncFile(filename))
+						failed.add(filename);
+				}
+			}
+		} catch (InterruptedException e) {
+			Log.e("AssetCopy", "Sync interrupted");
+			Thread.currentThread().interrupt();
+			m_failed.addAll(files);
+			return;
+		}
+		m_failed.addAll(failed);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			for (String folder : folders) {
+				var path = folder.isEmpty() ? workingDir : workingDir + "/" + folder;
+				try {
+					var fd = Os.open(path, OsConstants.O_RDONLY, 0);
+					try {
+						Os.fsync(fd);
+					} finally {
+						Os.close(fd);
+					}
+				} catch (ErrnoException e) {
+					Log.w("AssetCopy", "Syncing folder: " + path + " " + e.getMessage());
+				}
+			}
+		}
+		for (String filename : files) {
+			if (!failed.contains(filename))
+				Journal(filename);
+		}
+	}
+
+	/**
+	 * apply the binary patch packaged for a file to the version of it the
+	 * last copy installed
+	 *
+	 * @return the method used, or null if the file has to be copied whole
+	 */
+	CopyStats.Method PatchFile(AssetManifest.Entry entry, String destination) {
+		if (!entry.isPatched() || m_installed == null)
+			return null;
+		var installed = m_installed.get(entry.path);
+		if (installed == null || new File(destination).length() != installed.size)
+			return null;
+		try {
+			DeltaPatch.apply(context.getAssets()::open, m_sink, AssetManifest.patchPath(installed.hash, entry),
+					new File(destination), installed.hash, entry.hash);
+			return CopyStats.Method.PATCH;
+		} catch (IOException e) {
+			Log.w("AssetCopy", "Patch not applied to " + entry.path + ", copying it whole: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * link or copy the file from one already in the working directory with
+	 * the same content, instead of extracting it again from the apk. Only
+	 * read only media is linked, see LINKABLE_EXTENSIONS
+	 *
+	 * @return the method used, or null if there's no such file
+	 */
+	CopyStats.Method CopyLocal(AssetManifest.Entry entry, String destination) {
+		var existing = m_present.get(AssetManifest.toHex(entry.hash));
+		if (existing == null)
+			return null;
+		var source = workingDir + "/" + existing;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isLinkable(entry.path, entry.size)
+				&& isLinkable(existing, entry.size)) {
+			try {
+				Os.link(source, destination);
+				return CopyStats.Method.LINK;
+			} catch (ErrnoException e) {
+				// not supported by the filesystem, e.g. emulated external storage
+			}
+		}
+		try (var in = new FileInputStream(source); var out = new FileOutputStream(destination)) {
+			m_sink.preallocate(out.getFD(), entry.size);
+			ChannelTransfer.copy(in.getChannel(), 0, entry.size, out.getChannel());
+			return CopyStats.Method.LOCAL_COPY;
+		} catch (IOException e) {
+			Log.w("AssetCopy", "Local copy from " + existing + " failed: " + e.getMessage());
+			//noinspection ResultOfMethodCallIgnored
+			new File(destination).delete();
+			return null;
+		}
+	}
+
+	/**
+	 * both the new file and the one it's linked to must be read only media
+	 */
+	static boolean isLinkable(String path, long size) {
+		return size > 0 && LINKABLE_EXTENSIONS.contains(AssetManifest.extension(path).toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * check all files and folders in the manifest, parent folders
+	 * always come before their content as entries are sorted by path
+	 */
+	void ProcessFileList() {
+		for (int i = 0; i < m_manifest.size(); i++) {
+			String current_path = m_manifest.path(i);
+			String FlashPath = workingDir + "/" + current_path;
+			if ((m_manifest.flags(i) & AssetManifest.FLAG_DIRECTORY) != 0) {
+				/* update gui */
+				listener.onScanning(isUpdate ? "update/" + current_path : "defaults/" + current_path);
+				if (!m_sink.makeDirectory(FlashPath)) {
+					Log.e("AssetCopy", "\t failed create folder: " +
+							FlashPath);
+				} else {
+					Log.v("AssetCopy", "\t created folder: " +
+							FlashPath);
+				}
+				continue;
+			}
+			if (isServedFromApk(m_manifest.flags(i)))
+				continue;
+			if (isUnchanged(i, current_path, FlashPath)) {
+				if (verify)
+					m_toverify.add(current_path);
+				m_present.putIfAbsent(AssetManifest.toHex(m_manifest.entry(i).hash), current_path);
+				continue;
+			}
+			m_tocopy.add(current_path);
+		}
+	}
+
+	/**
+	 * hash the files considered up to date, the ones that don't match the
+	 * packaged manifest are copied again
+	 */
+	boolean VerifyFiles() {
+		listener.onScanning("verifying " + m_toverify.size() + " files");
+		long start = System.nanoTime();
+		List<String> mismatched;
+		try {
+			mismatched = new AssetVerifier(m_manifest, workingDir, copyThreads).verify(m_toverify);
+		} catch (InterruptedException e) {
+			Log.e("AssetCopy", "Verification interrupted");
+			return false;
+		}
+		m_stats.addPhase(CopyStats.Phase.VERIFY, System.nanoTime() - start);
+		m_stats.setVerified(m_toverify.size(), mismatched);
+		for (String path : mismatched) {
+			Log.w("AssetCopy", "Installed file doesn't match the manifest: " + path);
+			m_present.values().remove(path);
+		}
+		m_tocopy.addAll(mismatched);
+		return true;
+	}
+
+	/**
+	 * bytes the copy adds to the working directory, the old version of a
+	 * file is replaced so only the growth of the existing ones counts. Sizes
+	 * are rounded up to whole filesystem blocks. A patch is written to a full
+	 * size temporary file next to the old version before replacing it, each
+	 * copy thread can hold one, so room for the largest ones is added too
+	 */
+	long RequiredBytes() {
+		long required = 0;
+		var patched = new ArrayList<Long>();
+		for (String filename : m_tocopy) {
+			int idx = m_manifest.find(filename);
+			long size = roundToBlock(m_manifest.fileSize(idx));
+			required += Math.max(0, size - OwnedBytes(filename));
+			if ((m_manifest.flags(idx) & AssetManifest.FLAG_PATCH) != 0)
+				patched.add(size);
+		}
+		patched.sort(Collections.reverseOrder());
+		for (int i = 0; i < Math.min(copyThreads, patched.size()); i++)
+			required += patched.get(i);
+		return required;
+	}
+
+	/**
+	 * bytes given back by deleting the given files
+	 */
+	long FreedBytes(List<String> removed) {
+		long freed = 0;
+		for (String path : removed)
+			freed += OwnedBytes(path);
+		return freed;
+	}
+
+	/**
+	 * @return the blocks freed by deleting the file, nothing if other hard
+	 * links to it keep them in use
+	 */
+	long OwnedBytes(String path) {
+		var file = workingDir + "/" + path;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			try {
+				var stat = Os.lstat(file);
+				return stat.st_nlink == 1 ? roundToBlock(stat.st_size) : 0;
+			} catch (ErrnoException e) {
+				return 0;
+			}
+		}
+		return roundToBlock(new File(file).length());
+	}
+
+	private static long roundToBlock(long size) {
+		return (size + 4095) & ~4095L;
+	}
+
+	/**
+	 * @return the free space on the volume of the working directory, or -1
+	 */
+	@SuppressWarnings("deprecation")
+	long AvailableBytes() {
+		try {
+			var stat = new StatFs(workingDir);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+				return stat.getAvailableBytes();
+			return (long) stat.getAvailableBlocks() * stat.getBlockSize();
+		} catch (IllegalArgumentException e) {
+			Log.e("AssetCopy", "Cannot get free space of " + workingDir + ": " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * load the packaged manifest and the one saved by the last copy
+	 */
+	boolean LoadManifests() {
+		try {
+			m_manifest = AssetCopy.openManifest(context.getAssets(), isUpdate ? "manifestu.bin" : "manifest.bin");
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Error on processing manifest.bin " + e.getMessage());
+			return false;
+		}
+		var file = getInstalledManifestFile();
+		if (file.exists()) {
+			try {
+				m_installed = AssetManifest.load(file);
+			} catch (IOException e) {
+				Log.e("AssetCopy", "Error on reading installed manifest " + e.getMessage());
+			}
+		}
+		try {
+			m_journal = new CopyJournal(AssetCopy.getJournalFile(context), workingDir, strictSync);
+			if (m_journal.size() > 0)
+				Log.i("AssetCopy", "Resuming interrupted copy, " + m_journal.size() + " files already copied");
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Error on opening copy journal " + e.getMessage());
+		}
+		return true;
+	}
+
+	/**
+	 * a file is skipped if the last copy, or the interrupted one being
+	 * resumed, installed the same content and it's still there with the
+	 * expected size
+	 */
+	boolean isUnchanged(int index, String path, String FlashPath) {
+		var entry = m_manifest.entry(index);
+		boolean installed = (m_installed != null && entry.sameContent(m_installed.get(path)))
+				|| (m_journal != null && m_journal.isDone(path, entry.hash));
+		return installed && new File(FlashPath).length() == entry.size;
+	}
+
+	/**
+	 * the files installed by a previous version that aren't packaged
+	 * anymore or are now read from the apk, files not in the installed
+	 * manifest are left alone
+	 */
+	List<String> RemovedFiles() {
+		var removed = new ArrayList<String>();
+		if (m_installed == null)
+			return removed;
+		for (int i = 0; i < m_installed.size(); i++) {
+			if ((m_installed.flags(i) & AssetManifest.FLAG_DIRECTORY) != 0)
+				continue;
+			var path = m_installed.path(i);
+			int index = m_manifest.find(path);
+			if (index < 0 || isServedFromApk(m_manifest.flags(index)))
+				removed.add(path);
+		}
+		return removed;
+	}
+
+	void DeleteRemovedFiles(List<String> removed) {
+		for (String path : removed) {
+			if (m_sink.delete(workingDir + "/" + path))
+				Log.v("AssetCopy", "Deleted removed file: " + path);
+		}
+	}
+
+	/**
+	 * on update the old version of the files to copy is deleted up front,
+	 * patched files need it so they're replaced when they're copied
+	 */
+	void DeleteReplacedFiles() {
+		if (!isUpdate)
+			return;
+		for (String path : m_tocopy) {
+			if ((m_manifest.flags(m_manifest.find(path)) & AssetManifest.FLAG_PATCH) == 0)
+				m_sink.delete(workingDir + "/" + path);
+		}
+	}
+
+	/**
+	 * store what is now installed, entries that failed to copy are left
+	 * out so that they're copied again on the next update
+	 */
+	void SaveManifest() {
+		var failed = new HashSet<>(m_failed);
+		var installed = new ArrayList<AssetManifest.Entry>(m_manifest.size());
+		for (int i = 0; i < m_manifest.size(); i++) {
+			var entry = m_manifest.entry(i);
+			if (!failed.contains(entry.path) && !isServedFromApk(entry.flags))
+				installed.add(entry);
+		}
+		try {
+			AssetManifest.save(getInstalledManifestFile(), installed);
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Error on saving installed manifest " + e.getMessage());
+			return;
+		}
+		if (m_journal != null)
+			m_journal.delete();
+	}
+
+	/**
+	 * read only assets the native client reads from the apk through
+	 * AssetAccess aren't copied at all
+	 */
+	boolean isServedFromApk(int flags) {
+		return BuildConfig.DIRECT_ASSETS && (flags & AssetManifest.FLAG_DIRECT) != 0;
+	}
+
+	/**
+	 * record a copied file, if the process dies the next copy skips it
+	 */
+	void Journal(String filename) {
+		if (m_journal == null)
+			return;
+		try {
+			m_journal.record(filename, m_manifest.entry(m_manifest.find(filename)).hash);
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Error on writing copy journal " + e.getMessage());
+		}
+	}
+
+	/**
+	 * the metrics of the last run are kept in the working directory
+	 */
+	void WriteStats() {
+		var summary = m_stats.summary();
+		Log.i("AssetCopy", "Copy done\n" + summary);
+		try (var wr = new OutputStreamWriter(new FileOutputStream(new File(workingDir, "copy_stats.txt")), "UTF-8")) {
+			wr.write(summary);
+		} catch (IOException e) {
+			Log.e("AssetCopy", "Error on writing copy stats " + e.getMessage());
+		}
+	}
+
+	File getInstalledManifestFile() {
+		return new File(context.getFilesDir(), "assets_manifest");
+	}
+}
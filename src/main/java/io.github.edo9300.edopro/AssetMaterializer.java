@@ -0,0 +1,153 @@
+package io.github.edo9300.edopro;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Copies the non critical assets in the background once AssetCopy has
+ * finished and the game is running. It lives for the whole process and not
+ * for the activity that started it.
+ * <p>
+ * The native client calls {@link #requestAsset(String)} before opening a
+ * file that may not be there yet: a pending file is copied right away on
+ * the calling thread, a file being copied by a worker is waited for. Files
+ * it will need soon can be passed to {@link #prioritizeAsset(String)}
+ * instead, the workers copy them next.
+ */
+final class AssetMaterializer {
+
+	interface CompletionListener {
+		/**
+		 * called from the last worker thread once every file is copied
+		 */
+		void onComplete(List<String> failed);
+	}
+
+	private static volatile AssetMaterializer sInstance;
+
+	private final String workingDir;
+	private final ParallelCopier.CopyFunction copyFunction;
+	private final CompletionListener listener;
+	private final CopyScheduler scheduler;
+	private final HashSet<String> inProgress = new HashSet<>();
+	private final Vector<String> failed = new Vector<>();
+	private int runningWorkers;
+
+	private AssetMaterializer(String workingDir, List<ParallelCopier.Job> jobs,
+							  ParallelCopier.CopyFunction copyFunction, CompletionListener listener) {
+		this.workingDir = workingDir;
+		this.copyFunction = copyFunction;
+		this.listener = listener;
+		scheduler = new CopyScheduler(jobs);
+	}
+
+	/**
+	 * starts copying the given files with the given number of workers,
+	 * replaces the instance requests are served from
+	 */
+	static void start(String workingDir, List<ParallelCopier.Job> jobs, int workers,
+					  ParallelCopier.CopyFunction copyFunction, CompletionListener listener) {
+		var materializer = new AssetMaterializer(workingDir, jobs, copyFunction, listener);
+		sInstance = materializer;
+		int count = Math.max(1, Math.min(workers, jobs.size()));
+		materializer.runningWorkers = count;
+		for (int i = 0; i < count; i++) {
+			final boolean preferLarge = (i & 1) == 0;
+			new Thread(() -> materializer.work(preferLarge), "AssetMaterializer-" + i).start();
+		}
+	}
+
+	/**
+	 * called from native code before opening an asset, the path can be
+	 * either absolute or relative to the working directory
+	 *
+	 * @return false only if the file had to be copied and the copy failed
+	 */
+	@SuppressWarnings("unused")
+	public static boolean requestAsset(String path) {
+		var materializer = sInstance;
+		if (materializer == null)
+			return true;
+		return materializer.request(path);
+	}
+
+	/**
+	 * called from native code for a file it will open soon, the path can be
+	 * either absolute or relative to the working directory
+	 *
+	 * @return false if the file isn't waiting to be copied
+	 */
+	@SuppressWarnings("unused")
+	public static boolean prioritizeAsset(String path) {
+		var materializer = sInstance;
+		return materializer != null && materializer.scheduler.promote(materializer.relative(path));
+	}
+
+	private String relative(String path) {
+		if (path.startsWith(workingDir + "/"))
+			return path.substring(workingDir.length() + 1);
+		return path;
+	}
+
+	private boolean request(String path) {
+		path = relative(path);
+		synchronized (this) {
+			if (scheduler.claim(path) == null) {
+				try {
+					while (inProgress.contains(path))
+						wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return !failed.contains(path);
+			}
+			inProgress.add(path);
+		}
+		return copy(path);
+	}
+
+	private synchronized List<ParallelCopier.Job> take(boolean preferLarge) {
+		var batch = scheduler.next(preferLarge);
+		for (ParallelCopier.Job job : batch)
+			inProgress.add(job.path);
+		return batch;
+	}
+
+	private boolean copy(String path) {
+		boolean copied = copyFunction.copy(path);
+		if (!copied)
+			failed.add(path);
+		synchronized (this) {
+			inProgress.remove(path);
+			notifyAll();
+		}
+		return copied;
+	}
+
+	private void work(boolean preferLarge) {
+		List<ParallelCopier.Job> batch;
+		while (!(batch = take(preferLarge)).isEmpty()) {
+			for (ParallelCopier.Job job : batch)
+				copy(job.path);
+			preferLarge = !preferLarge;
+		}
+		synchronized (this) {
+			// files requested by the native client may still be copying
+			while (!inProgress.isEmpty()) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (--runningWorkers > 0)
+				return;
+		}
+		if (sInstance == this)
+			sInstance = null;
+		listener.onComplete(new ArrayList<>(failed));
+	}
+}
@@ -0,0 +1,80 @@
+package io.github.edo9300.edopro;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Int64Ref;
+import android.system.Os;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Copies assets stored uncompressed in the apk (see noCompress in build.gradle)
+ * with a kernel side transfer from the apk to the destination, without going
+ * through user space buffers. Compressed assets can't be opened as a file
+ * descriptor and are left to the native copier.
+ * <p>
+ * Large destinations are preallocated with their final size before writing,
+ * so that the filesystem can give them contiguous extents instead of growing
+ * them a chunk at a time.
+ */
+final class DirectAssetCopier {
+	static final long PREALLOCATE_MIN_SIZE = CopyStats.LARGE_FILE_SIZE;
+
+	private DirectAssetCopier() {
+	}
+
+	/**
+	 * @return the method used, or null if the asset is compressed
+	 * @throws IOException if the asset is stored but the copy failed
+	 */
+	static CopyStats.Method copy(AssetManager assetManager, String source, String destination, CopyStats stats)
+			throws IOException {
+		AssetFileDescriptor afd;
+		try {
+			afd = assetManager.openFd(source);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try (afd; var in = afd.createInputStream(); var out = new FileOutputStream(destination)) {
+			long offset = afd.getStartOffset();
+			long remaining = afd.getLength();
+			preallocate(out.getFD(), remaining, stats);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+				var inOffset = new Int64Ref(offset);
+				while (remaining > 0) {
+					long sent = Os.sendfile(out.getFD(), in.getFD(), inOffset, remaining);
+					if (sent <= 0)
+						throw new IOException("sendfile stopped with " + remaining + " bytes left");
+					remaining -= sent;
+				}
+				return CopyStats.Method.SENDFILE;
+			}
+			ChannelTransfer.copy(in.getChannel(), offset, remaining, out.getChannel());
+			return CopyStats.Method.TRANSFER_TO;
+		} catch (ErrnoException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * reserves the blocks of a large file that is about to be written, the
+	 * writes then go over the allocated range without changing its size
+	 */
+	static void preallocate(FileDescriptor fd, long size, CopyStats stats) {
+		if (size < PREALLOCATE_MIN_SIZE || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+			return;
+		long start = System.nanoTime();
+		try {
+			Os.posix_fallocate(fd, 0, size);
+			stats.recordPreallocation(size, System.nanoTime() - start);
+		} catch (ErrnoException e) {
+			// e.g. the emulated external storage doesn't support it
+			stats.recordPreallocation(-1, System.nanoTime() - start);
+		}
+	}
+}
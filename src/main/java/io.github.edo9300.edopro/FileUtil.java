@@ -27,19 +27,7 @@ public final class FileUtil {
 		try {
 			var volumePath = getVolumePath(getVolumeIdFromTreeUri(treeUri), con);
 			if (volumePath == null) return File.separator;
-			if (volumePath.endsWith(File.separator))
-				volumePath = volumePath.substring(0, volumePath.length() - 1);
-
-			var documentPath = getDocumentPathFromTreeUri(treeUri);
-			if (documentPath.endsWith(File.separator))
-				documentPath = documentPath.substring(0, documentPath.length() - 1);
-
-			if (!documentPath.isEmpty()) {
-				if (documentPath.startsWith(File.separator))
-					return volumePath + documentPath;
-				else
-					return volumePath + File.separator + documentPath;
-			} else return volumePath;
+			return DocumentPaths.fullPath(volumePath, DocumentsContract.getTreeDocumentId(treeUri));
 		} catch (Exception ex) {
 			var message = ex.getMessage();
 			if (message != null && message.startsWith("raw path")) {
@@ -87,21 +75,10 @@ public final class FileUtil {
 	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
 	private static String getVolumeIdFromTreeUri(final Uri treeUri) throws Exception {
 		final var docId = DocumentsContract.getTreeDocumentId(treeUri);
-		final var split = docId.split(":");
-		if (split.length > 0) {
-			if ("raw".equals(split[0])) {
-				throw new Exception("raw path:" + split[1]);
-			}
-			return split[0];
-		} else return null;
-	}
-
-
-	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
-	private static String getDocumentPathFromTreeUri(final Uri treeUri) {
-		final var docId = DocumentsContract.getTreeDocumentId(treeUri);
-		final var split = docId.split(":");
-		if ((split.length >= 2) && (split[1] != null)) return split[1];
-		else return File.separator;
+		final var volumeId = DocumentPaths.volumeId(docId);
+		if ("raw".equals(volumeId)) {
+			throw new Exception("raw path:" + DocumentPaths.documentPath(docId));
+		}
+		return volumeId;
 	}
 }
\ No newline at end of file
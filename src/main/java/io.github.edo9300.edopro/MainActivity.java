@@ -12,6 +12,9 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.Process;
+import android.os.StrictMode;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.util.Log;
 import android.widget.Toast;
@@ -22,18 +25,16 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.documentfile.provider.DocumentFile;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends Activity {
 	private final static boolean wantsScopedStorage = Build.VERSION.SDK_INT > Build.VERSION_CODES.Q;
@@ -42,7 +43,17 @@ public class MainActivity extends Activity {
 	private static final String[] REQUIRED_SDK_PERMISSIONS = new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE};
 	private static String working_directory;
 	private static boolean changelog;
+	private static boolean verifyAssets;
+	/* sync every copied file on its own, e.g. adb shell am start ... --es strictSync yes */
+	private static boolean strictSync;
 	private static ArrayList<String> parameter;
+	/* the startup state is read and written here, never on the ui thread, the tests wait on it */
+	static final ExecutorService sStateExecutor = Executors.newSingleThreadExecutor();
+	private StartupState state = new StartupState(null, 0);
+	private boolean copyInterrupted;
+	private static boolean sProcessStartMarked;
+	/* the policy of the ui thread before the launch, it's put back once the launch is done */
+	private StrictMode.ThreadPolicy previousThreadPolicy;
 
 	final int COPY_ASSETS = 1;
 	final int CHOOSE_WORKING_DIR = 2;
@@ -92,8 +103,25 @@ public class MainActivity extends Activity {
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
+		if (!sProcessStartMarked) {
+			sProcessStartMarked = true;
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+				StartupTrace.mark(StartupTrace.PROCESS_START, Process.getStartElapsedRealtime());
+		}
+		StartupTrace.mark(StartupTrace.ON_CREATE, SystemClock.elapsedRealtime());
+		if (BuildConfig.DEBUG) {
+			// the launch path must not touch the disk on the ui thread, the
+			// penalties of the policy already set are kept
+			previousThreadPolicy = StrictMode.getThreadPolicy();
+			StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder(previousThreadPolicy)
+					.detectDiskReads()
+					.detectDiskWrites()
+					.penaltyLog()
+					.build());
+		}
 		super.onCreate(savedInstanceState);
-		if (!wantsScopedStorage) next();
+		// this isn't the launch of the native client, it isn't marked nor reported
+		if (!wantsScopedStorage) finish();
 
 		var intent = getIntent();
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
@@ -106,6 +134,9 @@ public class MainActivity extends Activity {
 				}
 			}
 		}
+		var extras = intent.getExtras();
+		verifyAssets = extras != null && "yes".equals(extras.getString("verifyAssets"));
+		strictSync = extras != null && "yes".equals(extras.getString("strictSync"));
 		if (!isTaskRoot()) {
 			if (intent.hasCategory(Intent.CATEGORY_LAUNCHER)
 					&& intent.getAction() != null
@@ -192,21 +223,15 @@ public class MainActivity extends Activity {
 		}
 	}
 
-	@SuppressWarnings("ResultOfMethodCallIgnored")
 	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
 		switch (requestCode) {
 			case COPY_ASSETS: {
-				try {
-					var file = new File(getFilesDir(), "assets_copied");
-					if (file.exists() || file.createNewFile()) {
-						var wr = new FileWriter(file);
-						wr.write("" + BuildConfig.VERSION_CODE);
-						wr.flush();
-					}
-				} catch (Exception e) {
-					Log.e("EDOPro-KCG", "error when creating assets_copied file: " + e.getMessage());
+				if (resultCode == AssetCopy.RESULT_NO_SPACE) {
+					finish();
+					break;
 				}
-				next();
+				StartupTrace.mark(StartupTrace.COPY_FINISHED, SystemClock.elapsedRealtime());
+				saveState(state.withAssetsVersion(BuildConfig.VERSION_CODE), this::next);
 				break;
 			}
 			case CHOOSE_WORKING_DIR: {
@@ -218,87 +243,168 @@ public class MainActivity extends Activity {
 				}
 				var uri = data.getData();
 				Log.i("EDOPro", "Result URI " + uri);
-				var dest_dir = FileUtil.getFullPathFromTreeUri(uri, this);
-				if (dest_dir == null) {
-					Log.e("EDOPro-KCG", "returned URI is null");
-					finish();
-					break;
-				}
-				Log.i("EDOPro-KCG", "Parsed result URI " + dest_dir);
-				if (dest_dir.startsWith("/storage/emulated/0"))
-					setWorkingDir(dest_dir);
-				else {
-					var paths = getExternalFilesDirs("EDOPro-KCG");
-					var dirs = dest_dir.split("/");
-					var found = false;
-					if (dirs.length > 2) {
-						String storage = dirs[2];
-						for (int i = 0; i < paths.length; i++) {
-							Log.i("EDOPro-KCG", "Path " + i + " is: " + paths[i]);
-							if (storage.equals(paths[i].getAbsolutePath().split("/")[2])) {
-								Log.i("EDOPro-KCG", "path matching with " + dest_dir + " is: " + paths[i].getAbsolutePath());
-								dest_dir = paths[i].getAbsolutePath();
-								if (!paths[i].exists()) {
-									paths[i].mkdirs();
-								}
-								found = true;
-								break;
-							}
-						}
-					}
-					if (found) {
-						Toast.makeText(this, String.format(getResources().getString(R.string.default_dir), dest_dir), Toast.LENGTH_LONG).show();
-						final var cbdir = dest_dir;
-						new AlertDialog.Builder(this)
-								.setMessage(String.format(getResources().getString(R.string.default_path), dest_dir))
-								.setCancelable(false)
-								.setPositiveButton("OK", new DialogInterface.OnClickListener() {
-									public void onClick(DialogInterface dialog, int id) {
-										setWorkingDir(cbdir);
-									}
-								})
-								.create().show();
-					} else {
-						Toast.makeText(this, getResources().getString(R.string.no_matching), Toast.LENGTH_LONG).show();
-						Log.e("EDOPro-KCG", "couldn't find matching storage");
-						finish();
-					}
-				}
+				final var context = getApplicationContext();
+				// getExternalFilesDirs creates the folders, match the storage on the background thread
+				sStateExecutor.execute(() -> {
+					var dest_dir = FileUtil.getFullPathFromTreeUri(uri, context);
+					var matched = dest_dir == null || dest_dir.startsWith("/storage/emulated/0") ? null : matchingFilesDir(dest_dir);
+					runOnUiThread(() -> onWorkingDirChosen(dest_dir, matched));
+				});
 				break;
 			}
 		}
 	}
 
+	/**
+	 * called from the background thread
+	 *
+	 * @return the app folder in the same storage as the chosen path, created
+	 * if needed, or null if there's none
+	 */
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private String matchingFilesDir(String dest_dir) {
+		var paths = getExternalFilesDirs("EDOPro-KCG");
+		var dirs = dest_dir.split("/");
+		if (dirs.length <= 2)
+			return null;
+		String storage = dirs[2];
+		for (int i = 0; i < paths.length; i++) {
+			Log.i("EDOPro-KCG", "Path " + i + " is: " + paths[i]);
+			if (storage.equals(paths[i].getAbsolutePath().split("/")[2])) {
+				Log.i("EDOPro-KCG", "path matching with " + dest_dir + " is: " + paths[i].getAbsolutePath());
+				if (!paths[i].exists()) {
+					paths[i].mkdirs();
+				}
+				return paths[i].getAbsolutePath();
+			}
+		}
+		return null;
+	}
+
+	private void onWorkingDirChosen(String dest_dir, String matched) {
+		if (isFinishing())
+			return;
+		if (dest_dir == null) {
+			Log.e("EDOPro-KCG", "returned URI is null");
+			finish();
+			return;
+		}
+		Log.i("EDOPro-KCG", "Parsed result URI " + dest_dir);
+		if (dest_dir.startsWith("/storage/emulated/0")) {
+			setWorkingDir(dest_dir);
+			return;
+		}
+		if (matched != null) {
+			Toast.makeText(this, String.format(getResources().getString(R.string.default_dir), matched), Toast.LENGTH_LONG).show();
+			new AlertDialog.Builder(this)
+					.setMessage(String.format(getResources().getString(R.string.default_path), matched))
+					.setCancelable(false)
+					.setPositiveButton("OK", new DialogInterface.OnClickListener() {
+						public void onClick(DialogInterface dialog, int id) {
+							setWorkingDir(matched);
+						}
+					})
+					.create().show();
+		} else {
+			Toast.makeText(this, getResources().getString(R.string.no_matching), Toast.LENGTH_LONG).show();
+			Log.e("EDOPro-KCG", "couldn't find matching storage");
+			finish();
+		}
+	}
+
+	/**
+	 * hands off to the native client, the startup report of this launch is
+	 * written to the working directory
+	 */
 	public void next() {
+		StartupTrace.mark(StartupTrace.NATIVE_LAUNCHED, SystemClock.elapsedRealtime());
+		final var workingDir = working_directory;
+		if (workingDir != null) {
+			sStateExecutor.execute(() -> {
+				var report = StartupTrace.report();
+				if (!StartupTrace.withinBudgets())
+					Log.w("EDOPro-KCG", "Launch over budget\n" + report);
+				try (var wr = new OutputStreamWriter(new FileOutputStream(new File(workingDir, "startup_report.txt")), "UTF-8")) {
+					wr.write(report);
+				} catch (IOException e) {
+					Log.e("EDOPro-KCG", "cannot write the startup report: " + e.getMessage());
+				}
+			});
+		}
+		restoreThreadPolicy();
 		finish();
 	}
 
+	@Override
+	protected void onDestroy() {
+		restoreThreadPolicy();
+		super.onDestroy();
+	}
+
+	/**
+	 * the native client runs on the same ui thread, it doesn't get the
+	 * policy of the launch
+	 */
+	private void restoreThreadPolicy() {
+		if (previousThreadPolicy == null)
+			return;
+		StrictMode.setThreadPolicy(previousThreadPolicy);
+		previousThreadPolicy = null;
+	}
+
+	/**
+	 * loads the startup state on the background thread and continues on
+	 * the ui thread once it's there
+	 */
 	public void getWorkingDirectory() {
-		var file = new File(getFilesDir(), "working_dir");
-		if (file.exists()) {
+		final var context = getApplicationContext();
+		sStateExecutor.execute(() -> {
+			final var loaded = StartupState.load(context.getFilesDir());
+			final boolean interrupted = AssetCopy.getJournalFile(context).exists();
+			final var defaultPath = loaded.workingDir == null ? getDefaultPathFile() : null;
+			runOnUiThread(() -> {
+				StartupTrace.mark(StartupTrace.STATE_LOADED, SystemClock.elapsedRealtime());
+				if (isFinishing())
+					return;
+				state = loaded;
+				copyInterrupted = interrupted;
+				working_directory = loaded.workingDir;
+				if (working_directory != null) {
+					copyAssetsPrompt(working_directory);
+					return;
+				}
+				getDefaultPath(defaultPath);
+			});
+		});
+	}
+
+	/**
+	 * called from the background thread, getExternalFilesDir creates the folder
+	 */
+	private File getDefaultPathFile() {
+		if (wantsScopedStorage)
+			return new File(getExternalFilesDir("EDOPro-KCG").getPath());
+		return new File(Environment.getExternalStorageDirectory() + "/EDOPro-KCG");
+	}
+
+	/**
+	 * writes the state on the background thread, then runs onSaved on the ui thread
+	 */
+	private void saveState(final StartupState newState, final Runnable onSaved) {
+		state = newState;
+		final var context = getApplicationContext();
+		sStateExecutor.execute(() -> {
 			try {
-				BufferedReader br = new BufferedReader(new FileReader(file));
-				working_directory = br.readLine();
-				br.close();
+				newState.save(context.getFilesDir());
 			} catch (IOException e) {
-				Log.e("EDOPro-KCG", "working directory file found but not read: " + e.getMessage());
+				Log.e("EDOPro-KCG", "cannot write the startup state: " + e.getMessage());
 			}
-		}
-
-		if (working_directory != null) {
-			copyAssetsPrompt(working_directory);
-			return;
-		}
-		getDefaultPath();
+			if (onSaved != null)
+				runOnUiThread(onSaved);
+		});
 	}
 
-	public void getDefaultPath() {
-		final File path;
-		if (wantsScopedStorage) {
-			path = new File(getExternalFilesDir("EDOPro-KCG").getPath());
-		} else {
-			path = new File(Environment.getExternalStorageDirectory() + "/EDOPro-KCG");
-		}
+	public void getDefaultPath(final File path) {
 		final String dest_dir = path.getAbsolutePath();
 		if (!dest_dir.isEmpty()) {
 			AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -306,21 +412,11 @@ public class MainActivity extends Activity {
 				Toast.makeText(this, String.format(getResources().getString(R.string.default_dir), dest_dir), Toast.LENGTH_LONG).show();
 				builder.setMessage(String.format(getResources().getString(R.string.default_dir), dest_dir))
 						.setCancelable(false)
-						.setPositiveButton("OK", (dialog, id) -> {
-							if (!path.exists()) {
-								path.mkdirs();
-							}
-							setWorkingDir(dest_dir);
-						});
+						.setPositiveButton("OK", (dialog, id) -> setWorkingDir(dest_dir));
 			} else if (!wantsScopedStorage) {
 				builder.setMessage(String.format(getResources().getString(R.string.default_dir_changeable), dest_dir))
 						.setCancelable(false)
-						.setPositiveButton(R.string.keep_game_folder, (dialog, id) -> {
-							if (!path.exists()) {
-								path.mkdirs();
-							}
-							setWorkingDir(dest_dir);
-						})
+						.setPositiveButton(R.string.keep_game_folder, (dialog, id) -> setWorkingDir(dest_dir))
 						.setNeutralButton(R.string.change_game_folder, (dialog, id) -> chooseWorkingDir());
 			}
 			AlertDialog alert = builder.create();
@@ -345,20 +441,23 @@ public class MainActivity extends Activity {
 	}
 
 	public void setWorkingDir(String dest_dir, String data_dir) {
-		{
-			working_directory = dest_dir;
-			var file = new File(getFilesDir(), "working_dir");
+		working_directory = dest_dir;
+		state = state.withWorkingDir(dest_dir);
+		final var newState = state;
+		final var context = getApplicationContext();
+		sStateExecutor.execute(() -> {
+			var path = new File(dest_dir);
+			if (!path.exists() && !path.mkdirs())
+				Log.e("EDOPro", "cannot create working directory " + dest_dir);
 			try {
-				var fOut = new FileOutputStream(file);
-				new OutputStreamWriter(fOut).append(dest_dir).close();
-				fOut.close();
-			} catch (Exception e) {
+				newState.save(context.getFilesDir());
+			} catch (IOException e) {
 				Log.e("EDOPro", "cannot write to working directory file: " + e.getMessage());
-				finish();
+				runOnUiThread(this::finish);
 				return;
 			}
-		}
-		copyAssetsPrompt(dest_dir);
+			runOnUiThread(() -> copyAssetsPrompt(dest_dir));
+		});
 	}
 
 	public void setWorkingDir(String dest_dir) {
@@ -366,26 +465,29 @@ public class MainActivity extends Activity {
 	}
 
 	public void copyAssetsPrompt(final String working_dir) {
+		StartupTrace.mark(StartupTrace.COPY_CHECKED, SystemClock.elapsedRealtime());
 		changelog = false;
-		var file = new File(getFilesDir(), "assets_copied");
-		if (file.exists()) {
-			try {
-				var fileReader = new BufferedReader(new FileReader(file));
-				var line = fileReader.readLine();
-				int prevversion = Integer.parseInt(line);
-				if (prevversion < BuildConfig.VERSION_CODE) {
-					try {
-						//creates the empty assets_copied file
-						new PrintWriter(file).close();
-						Toast.makeText(this, getResources().getString(R.string.copying_update), Toast.LENGTH_LONG).show();
-						copyAssets(working_dir, true);
-					} catch (Exception ignored) {
-					}
-				} else
-					next();
-				return;
-			} catch (Exception ignored) {
-			}
+		if (copyInterrupted) {
+			// a previous copy didn't complete, resume it or wait for the
+			// one still running in AssetCopyService
+			copyAssets(working_dir, false);
+			return;
+		}
+		if (verifyAssets) {
+			// launched from the shortcut, check the installed files and repair the broken ones
+			copyAssets(working_dir, false);
+			return;
+		}
+		int prevversion = state.assetsVersion;
+		if (prevversion > 0) {
+			if (prevversion < BuildConfig.VERSION_CODE) {
+				// no version until the update copy completes
+				saveState(state.withAssetsVersion(0), null);
+				Toast.makeText(this, getResources().getString(R.string.copying_update), Toast.LENGTH_LONG).show();
+				copyAssets(working_dir, true);
+			} else
+				next();
+			return;
 		}
 		new AlertDialog.Builder(this)
 				.setMessage(R.string.assets_prompt)
@@ -395,11 +497,14 @@ public class MainActivity extends Activity {
 	}
 
 	public void copyAssets(String working_dir, boolean isUpdate) {
+		StartupTrace.mark(StartupTrace.COPY_STARTED, SystemClock.elapsedRealtime());
 		changelog = true;
 		Intent intent = new Intent(this, AssetCopy.class);
 		var params = new Bundle();
 		params.putString("workingDir", working_dir);
 		params.putBoolean("isUpdate", isUpdate);
+		params.putBoolean("verify", verifyAssets);
+		params.putBoolean("strictSync", strictSync);
 		intent.putExtras(params);
 		startActivityForResult(intent, COPY_ASSETS);
 	}
@@ -0,0 +1,30 @@
+package io.github.edo9300.edopro;
+
+import java.io.FileDescriptor;
+
+/**
+ * The working directory as seen by the native client, folders are created
+ * and files deleted through libassetcopier.
+ */
+final class NativeFileSink implements FileSink {
+	private final CopyStats stats;
+
+	NativeFileSink(CopyStats stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public boolean makeDirectory(String path) {
+		return AssetCopy.makeDirectory(path);
+	}
+
+	@Override
+	public boolean delete(String path) {
+		return AssetCopy.fileDelete(path);
+	}
+
+	@Override
+	public void preallocate(FileDescriptor fd, long size) {
+		DirectAssetCopier.preallocate(fd, size, stats);
+	}
+}
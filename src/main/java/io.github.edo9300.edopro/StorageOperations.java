@@ -3,42 +3,286 @@
 
 package io.github.edo9300.edopro;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.DocumentsContract;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.RequiresApi;
 import androidx.documentfile.provider.DocumentFile;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class StorageOperations {
 
+	/* total number of names kept in the cached folder listings */
+	private static final int LISTING_CACHE_NAMES = 16384;
+	/* how long a path found missing is trusted to still be */
+	private static final long MISSING_TTL_MILLIS = 30000;
+
 	final private String scoped_storage_dir;
 	final private Context context;
+	/* folder listings by path relative to the tree root, as the index keys */
+	final private LruCache<String, String[]> listings = new LruCache<>(LISTING_CACHE_NAMES) {
+		@Override
+		protected int sizeOf(String key, String[] value) {
+			return Math.max(1, value.length);
+		}
+	};
+	/* bumped on every invalidation, a listing queried meanwhile isn't cached */
+	final private AtomicInteger listingGeneration = new AtomicInteger();
+	final private DocumentIndex index = new DocumentIndex();
+	final private MissingPaths missing = new MissingPaths(MISSING_TTL_MILLIS);
+
+	private final String rootDocumentId;
+	private ProviderObserver observer;
 
 	StorageOperations(Context parent_context, String root) {
 		scoped_storage_dir = root;
 		context = parent_context;
+		rootDocumentId = documentId(Uri.parse(root));
+		registerObserver();
+	}
+
+	/**
+	 * holds the instance weakly and unregisters itself once it's gone, for
+	 * the instances dropped without being closed
+	 */
+	private static final class ProviderObserver extends ContentObserver {
+		private final WeakReference<StorageOperations> operations;
+		private final ContentResolver resolver;
+
+		ProviderObserver(StorageOperations operations, ContentResolver resolver) {
+			super(null);
+			this.operations = new WeakReference<>(operations);
+			this.resolver = resolver;
+		}
+
+		@Override
+		public void onChange(boolean selfChange) {
+			onChange(selfChange, null);
+		}
+
+		@Override
+		public void onChange(boolean selfChange, Uri uri) {
+			var operations = this.operations.get();
+			if (operations == null) {
+				resolver.unregisterContentObserver(this);
+				return;
+			}
+			operations.onProviderChange(uri);
+		}
+	}
+
+	/**
+	 * changes made by other apps are only known from the provider
+	 * notifications, they're registered for the whole authority as the
+	 * providers don't notify the tree uris
+	 */
+	private void registerObserver() {
+		try {
+			var authority = Uri.parse(scoped_storage_dir).getAuthority();
+			if (authority == null)
+				return;
+			var providerUri = new Uri.Builder().scheme("content").authority(authority).build();
+			var resolver = context.getContentResolver();
+			observer = new ProviderObserver(this, resolver);
+			resolver.registerContentObserver(providerUri, true, observer);
+		} catch (Exception e) {
+			observer = null;
+			Log.e("EDOPro", "cannot observe the storage provider: " + e);
+		}
+	}
+
+	/**
+	 * stops watching the provider, called by the native client once it's
+	 * done with the storage. The instance keeps working, without noticing
+	 * the changes of other apps
+	 */
+	public synchronized void close() {
+		if (observer == null)
+			return;
+		context.getContentResolver().unregisterContentObserver(observer);
+		observer = null;
+	}
+
+	/**
+	 * @return the id of the document a tree or document uri points to, or null
+	 */
+	private static String documentId(Uri uri) {
+		var segments = uri.getPathSegments();
+		String treeId = null;
+		for (int i = 0; i + 1 < segments.size(); i++) {
+			if ("document".equals(segments.get(i)))
+				return segments.get(i + 1);
+			if ("tree".equals(segments.get(i)))
+				treeId = segments.get(i + 1);
+		}
+		return treeId;
+	}
+
+	/**
+	 * a notification naming a document under the tree drops what's cached
+	 * for it and for what's under it, and the listing of its folder. One
+	 * for a document elsewhere is ignored, one for the tree root or for no
+	 * document drops every listing, resolved path and missing path
+	 */
+	private void onProviderChange(Uri uri) {
+		var documentId = uri == null ? null : documentId(uri);
+		if (documentId == null || rootDocumentId == null || documentId.equals(rootDocumentId)) {
+			invalidateAll();
+			return;
+		}
+		var prefix = rootDocumentId.endsWith(":") || rootDocumentId.endsWith("/") ? rootDocumentId : rootDocumentId + "/";
+		if (documentId.startsWith(prefix)) {
+			// document ids aren't encoded, they're keys as they are
+			var key = DocumentIndex.trim(documentId.substring(prefix.length()));
+			invalidateFolder(key);
+			// the document may have been created or deleted, the folder listing it changed too
+			invalidateParent(key);
+		}
+	}
+
+	/**
+	 * drops every listing, resolved path and missing path
+	 */
+	private void invalidateAll() {
+		listingGeneration.incrementAndGet();
+		listings.evictAll();
+		index.clear();
+		missing.clear();
+	}
+
+	/**
+	 * drops the listings, resolved paths and missing paths of the folder
+	 * and of everything under it
+	 */
+	private void invalidateFolder(String key) {
+		evictListings(key);
+		index.remove(key);
+		missing.remove(key);
+		missing.removeChildren(key);
+	}
+
+	/**
+	 * drops the cached listings of the folder and of the folders under it
+	 */
+	private void evictListings(String key) {
+		listingGeneration.incrementAndGet();
+		var prefix = key.isEmpty() ? "" : key + "/";
+		for (String cached : listings.snapshot().keySet()) {
+			if (cached.equals(key) || cached.startsWith(prefix))
+				listings.remove(cached);
+		}
+	}
+
+	/**
+	 * drops the cached listing of the folder containing the given path
+	 */
+	private void invalidateParent(String key) {
+		listingGeneration.incrementAndGet();
+		listings.remove(DocumentIndex.parent(key));
+	}
+
+	/**
+	 * @return the hit and miss counts of the caches
+	 */
+	public String cacheStats() {
+		return "listings: " + listings.hitCount() + " hits, " + listings.missCount() + " misses, "
+				+ listings.evictionCount() + " evictions; paths: " + index.stats() + "; missing: " + missing.stats();
+	}
+
+	private String key(String input) {
+		return DocumentIndex.key(scoped_storage_dir, input);
+	}
+
+	/**
+	 * @return the index entry of the path, its uri is only encoded the first
+	 * time it's seen. It's encoded from the key, not from the input that may
+	 * already be an encoded uri
+	 */
+	private DocumentIndex.Entry resolve(String key) {
+		var entry = index.get(key);
+		if (entry != null)
+			return entry;
+		var uri = key.isEmpty() ? scoped_storage_dir : DocumentPaths.normalize(scoped_storage_dir, "/" + key);
+		return index.put(key, uri, DocumentIndex.Type.UNKNOWN);
+	}
+
+	/**
+	 * @return the index entry of the path, recorded with the given uri if it had none
+	 */
+	private DocumentIndex.Entry resolveUri(String key, String uri) {
+		var entry = index.get(key);
+		if (entry != null)
+			return entry;
+		return index.put(key, uri, DocumentIndex.Type.UNKNOWN);
+	}
+
+	/**
+	 * answered from the index when the type of the path is known, and from
+	 * the missing paths when it was recently found missing
+	 */
+	@RequiresApi(Build.VERSION_CODES.O_MR1)
+	private EXISTS_TYPE exists(String key, DocumentIndex.Entry entry) {
+		return exists(key, entry, true);
+	}
+
+	/**
+	 * @param trustMissing false before creating the path, a stale missing
+	 *                     path would make the provider create "name (1)"
+	 */
+	@RequiresApi(Build.VERSION_CODES.O_MR1)
+	private EXISTS_TYPE exists(String key, DocumentIndex.Entry entry, boolean trustMissing) {
+		if (entry.type != DocumentIndex.Type.UNKNOWN)
+			return entry.type == DocumentIndex.Type.FOLDER ? EXISTS_TYPE.FOLDER : EXISTS_TYPE.FILE;
+		if (trustMissing && missing.contains(key))
+			return EXISTS_TYPE.NONE;
+		var exists = queryExists(entry.uri);
+		if (exists == EXISTS_TYPE.NONE)
+			missing.add(key);
+		else
+			index.put(key, entry.uri, exists == EXISTS_TYPE.FOLDER ? DocumentIndex.Type.FOLDER : DocumentIndex.Type.FILE);
+		return exists;
 	}
 
+	/**
+	 * @return the document uri of a path given either as a uri or relative to the tree root
+	 */
 	public String normalizeUri(String input) {
-		return scoped_storage_dir + Uri.encode(input.replace(scoped_storage_dir, ""));
+		return resolve(key(input)).uri;
 	}
 
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
 	public boolean contentUriRemoveFile(String uriString) {
 		try {
-			var uri = Uri.parse(normalizeUri(uriString));
+			var key = key(uriString);
+			var uri = Uri.parse(resolve(key).uri);
 			var documentFile = DocumentFile.fromSingleUri(context, uri);
 			if (documentFile != null) {
-				return documentFile.delete();
+				var deleted = documentFile.delete();
+				index.remove(key);
+				// a deleted folder takes the listings of everything under it along
+				evictListings(key);
+				if (deleted)
+					missing.add(key);
+				invalidateParent(key);
+				return deleted;
 			} else {
 				return false;
 			}
@@ -68,8 +312,17 @@ public class StorageOperations {
 		}
 	}
 
+	/**
+	 * @param elementUri a document uri, as returned by normalizeUri
+	 */
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
 	public EXISTS_TYPE contentUriElementExists(String elementUri) {
+		var key = key(elementUri);
+		return exists(key, resolveUri(key, elementUri));
+	}
+
+	@RequiresApi(Build.VERSION_CODES.O_MR1)
+	private EXISTS_TYPE queryExists(String elementUri) {
 		Cursor c = null;
 		try {
 			var uri = Uri.parse(elementUri);
@@ -92,37 +345,27 @@ public class StorageOperations {
 		}
 	}
 
-	static private String[] getPathAndFilenameFromUri(String uri_string) {
-		if (uri_string.endsWith("%2F")) {
-			uri_string = uri_string.substring(0, uri_string.length() - 3);
-		}
-		int i = uri_string.lastIndexOf("%2F");
-		String[] ret = new String[2];
-		ret[0] = uri_string.substring(0, i);
-		ret[1] = uri_string.substring(i + 3);
-		return ret;
-	}
-
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
 	public boolean contentUriCreateDirectory(String dirUri) {
 		try {
-			var normalized = normalizeUri(dirUri);
-			switch (contentUriElementExists(normalized)) {
+			var key = key(dirUri);
+			var entry = resolve(key);
+			var normalized = entry.uri;
+			switch (exists(key, entry, false)) {
 				case FOLDER -> {
 					return true;
 				}
 				case NONE -> {
-					var pathComponents = getPathAndFilenameFromUri(Uri.parse(normalized).toString());
-					var rootTreeUri = Uri.parse(pathComponents[0]);
-					var dirName = Uri.decode(pathComponents[1]);
-					var documentFile = DocumentFile.fromTreeUri(context, rootTreeUri);
-					if (documentFile != null) {
-						var createdDir = documentFile.createDirectory(dirName);
-						return createdDir != null;
-					} else {
-						Log.e("EDOPro", "contentUriCreateDirectory: fromTreeUri returned null");
+					var pathComponents = DocumentPaths.splitParent(normalized);
+					var createdDir = DocumentsContract.createDocument(context.getContentResolver(),
+							Uri.parse(pathComponents[0]), DocumentsContract.Document.MIME_TYPE_DIR,
+							Uri.decode(pathComponents[1]));
+					invalidateParent(key);
+					if (createdDir == null)
 						return false;
-					}
+					index.put(key, createdDir.toString(), DocumentIndex.Type.FOLDER);
+					missing.remove(key);
+					return true;
 				}
 				default -> {
 					return false;
@@ -134,54 +377,167 @@ public class StorageOperations {
 		}
 	}
 
+	/**
+	 * looks up the folders from the deepest one up until one exists, then
+	 * creates the missing ones in order, each in the uri returned for its parent
+	 */
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
-	private boolean contentUriCreateFile(String rootTreeUri, String fileName) {
+	public String contentUriCreateDirectories(String dirUri) {
 		try {
-			var uri = Uri.parse(rootTreeUri);
-			var documentFile = DocumentFile.fromTreeUri(context, uri);
-			if (documentFile != null) {
-				var createdFile = documentFile.createFile("application/octet-stream", Uri.decode(fileName));
-				return createdFile != null;
-			} else {
-				Log.e("EDOPro", "contentUriCreateFile: fromTreeUri returned null");
-				return false;
+			var key = key(dirUri);
+			var uri = resolve(key).uri;
+			var missingKeys = new ArrayList<String>();
+			// the tree root always exists
+			while (!key.isEmpty()) {
+				var entry = resolveUri(key, uri);
+				uri = entry.uri;
+				var exists = exists(key, entry, false);
+				if (exists == EXISTS_TYPE.FOLDER)
+					break;
+				if (exists == EXISTS_TYPE.FILE) {
+					Log.e("EDOPro", "contentUriCreateDirectories: " + key + " is a file");
+					return null;
+				}
+				missingKeys.add(key);
+				uri = DocumentPaths.splitParent(uri)[0];
+				key = DocumentIndex.parent(key);
+			}
+			var folderUri = Uri.parse(uri);
+			for (int i = missingKeys.size() - 1; i >= 0; i--) {
+				var folderKey = missingKeys.get(i);
+				var name = folderKey.substring(folderKey.lastIndexOf('/') + 1);
+				folderUri = DocumentsContract.createDocument(context.getContentResolver(), folderUri,
+						DocumentsContract.Document.MIME_TYPE_DIR, name);
+				invalidateParent(folderKey);
+				if (folderUri == null) {
+					Log.e("EDOPro", "contentUriCreateDirectories: cannot create " + folderKey);
+					return null;
+				}
+				index.put(folderKey, folderUri.toString(), DocumentIndex.Type.FOLDER);
+				missing.remove(folderKey);
+			}
+			return DocumentsContract.getDocumentId(folderUri);
+		} catch (Exception e) {
+			Log.e("EDOPro", "contentUriCreateDirectories exception: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the document uri of the folder containing the path, taken from
+	 * the index when the folder is in it
+	 */
+	private String parentUri(String key, String uri) {
+		var parent = index.get(DocumentIndex.parent(key));
+		if (parent != null && parent.type == DocumentIndex.Type.FOLDER)
+			return parent.uri;
+		return DocumentPaths.splitParent(uri)[0];
+	}
+
+	/**
+	 * @return what the cached listing of the folder containing the path says
+	 * of it, or null if that listing isn't cached
+	 */
+	private EXISTS_TYPE listed(String key) {
+		var listing = listings.get(DocumentIndex.parent(key));
+		if (listing == null)
+			return null;
+		var name = key.substring(key.lastIndexOf('/') + 1);
+		for (String child : listing) {
+			if (child.equals(name))
+				return EXISTS_TYPE.FILE;
+			if (child.length() == name.length() + 1 && child.startsWith(name) && child.endsWith("/"))
+				return EXISTS_TYPE.FOLDER;
+		}
+		return EXISTS_TYPE.NONE;
+	}
+
+	/**
+	 * @param key       the index key of the new file
+	 * @param parentUri the document uri of the folder, used as it is
+	 * @param fileName  the decoded name of the file
+	 * @return the uri of the new document, or null
+	 */
+	@RequiresApi(Build.VERSION_CODES.O_MR1)
+	private Uri contentUriCreateFile(String key, String parentUri, String fileName) {
+		try {
+			var created = DocumentsContract.createDocument(context.getContentResolver(), Uri.parse(parentUri),
+					"application/octet-stream", fileName);
+			invalidateParent(key);
+			if (created != null) {
+				index.put(key, created.toString(), DocumentIndex.Type.FILE);
+				missing.remove(key);
 			}
+			return created;
 		} catch (Exception e) {
 			Log.e("EDOPro", "contentUriCreateFile exception: " + e);
-			return false;
+			return null;
 		}
 	}
 
+	/**
+	 * one call to the provider when the file exists, the file is only looked
+	 * up and created if the open fails and the mode allows creating it. The
+	 * lookup is answered by the cached listing of the folder when there's
+	 * one, and the file is created in the folder uri of the index. An
+	 * existing document that can't be opened, as a folder, is never created again
+	 *
+	 * @param mode as for ContentResolver.openFileDescriptor, a missing file
+	 *             is created for every mode but "r" and "rw". Only these
+	 *             trust the missing paths
+	 * @return a file descriptor owned by the caller, or -1
+	 */
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
 	public int openContentUri(String uriString, String mode) {
 		try {
 			if (mode.isEmpty()) {
 				return -1;
 			}
-			var uri = Uri.parse(normalizeUri(uriString));
-			var uri_string = uri.toString();
-			var exists = contentUriElementExists(uri_string);
-			if (exists == EXISTS_TYPE.FOLDER) {
+			var key = key(uriString);
+			var entry = resolve(key);
+			if (entry.type == DocumentIndex.Type.FOLDER)
 				return -1;
-			}
-			if (exists == EXISTS_TYPE.NONE) {
-				if (!("r".equals(mode) || "rw".equals(mode))) {
-					var pathComponents = getPathAndFilenameFromUri(uri_string);
-					if (!contentUriCreateFile(pathComponents[0], pathComponents[1]))
-						return -1;
-				} else {
+			var normalized = entry.uri;
+			var create = !("r".equals(mode) || "rw".equals(mode));
+			// only the modes that don't create trust a missing path, the others
+			// try to open the file first as it may have appeared since
+			if (!create && missing.contains(key))
+				return -1;
+			try {
+				var fd = openFileDescriptor(Uri.parse(normalized), mode);
+				if (fd >= 0 && entry.type != DocumentIndex.Type.FILE) {
+					index.put(key, normalized, DocumentIndex.Type.FILE);
+					if (create) {
+						// the open may have created the file
+						missing.remove(key);
+						if (listed(key) != EXISTS_TYPE.FILE)
+							invalidateParent(key);
+					}
+				}
+				return fd;
+			} catch (FileNotFoundException | IllegalArgumentException e) {
+				// IllegalArgumentException is long and ugly and really just means file not found.
+				index.remove(key);
+				if (!create) {
+					missing.add(key);
+					Log.d("EDOPro", "openFileDescriptor: File not found." + e);
 					return -1;
 				}
-			}
-			try (var filePfd = context.getContentResolver().openFileDescriptor(uri, mode)) {
-				if (filePfd == null) {
-					Log.e("EDOPro", "Failed to get file descriptor for " + uriString);
+				// a folder fails the same way, and so does a file that can't be written
+				var exists = listed(key);
+				if (exists == null)
+					exists = queryExists(normalized);
+				if (exists != EXISTS_TYPE.NONE) {
+					index.put(key, normalized, exists == EXISTS_TYPE.FOLDER ? DocumentIndex.Type.FOLDER : DocumentIndex.Type.FILE);
+					Log.d("EDOPro", "openFileDescriptor: cannot open " + key + " for writing." + e);
 					return -1;
 				}
-				return filePfd.detachFd();  // Take ownership of the fd.
 			}
-		} catch (IllegalArgumentException e) {
-			// This exception is long and ugly and really just means file not found.
+			var created = contentUriCreateFile(key, parentUri(key, normalized), key.substring(key.lastIndexOf('/') + 1));
+			if (created == null)
+				return -1;
+			return openFileDescriptor(created, mode);
+		} catch (FileNotFoundException | IllegalArgumentException e) {
 			Log.d("EDOPro", "openFileDescriptor: File not found." + e);
 			return -1;
 		} catch (Exception e) {
@@ -190,11 +546,43 @@ public class StorageOperations {
 		}
 	}
 
+	/**
+	 * @return a file descriptor owned by the caller, or -1 if the document is a folder
+	 */
+	@RequiresApi(Build.VERSION_CODES.O_MR1)
+	private int openFileDescriptor(Uri uri, String mode) throws IOException {
+		try (var filePfd = context.getContentResolver().openFileDescriptor(uri, mode)) {
+			if (filePfd == null) {
+				Log.e("EDOPro", "Failed to get file descriptor for " + uri);
+				return -1;
+			}
+			// folders can be opened for reading, the native client only wants files
+			try {
+				if (OsConstants.S_ISDIR(Os.fstat(filePfd.getFileDescriptor()).st_mode))
+					return -1;
+			} catch (ErrnoException e) {
+				throw new IOException(e);
+			}
+			return filePfd.detachFd();  // Take ownership of the fd.
+		}
+	}
+
+	/**
+	 * listings are served from the cache, the copy returned can be modified
+	 *
+	 * @return the names of the children, folders have a trailing slash
+	 */
 	@RequiresApi(Build.VERSION_CODES.O_MR1)
 	public String[] listFolderUri(String uriString) {
 		try {
+			var key = key(uriString);
+			var cached = listings.get(key);
+			if (cached != null)
+				return cached.clone();
+			int generation = listingGeneration.get();
 			ArrayList<String> filenames = new ArrayList<>();
-			var uri = Uri.parse(normalizeUri(uriString));
+			var normalized = resolve(key).uri;
+			var uri = Uri.parse(normalized);
 			final String[] columns = new String[]{
 					DocumentsContract.Document.COLUMN_DISPLAY_NAME,
 					DocumentsContract.Document.COLUMN_MIME_TYPE,
@@ -217,7 +605,14 @@ public class StorageOperations {
 				}
 				c.close();
 			}
-			return filenames.toArray(new String[0]);
+			var result = filenames.toArray(new String[0]);
+			missing.removeChildren(key);
+			if (generation == listingGeneration.get()) {
+				listings.put(key, result);
+				index.put(key, normalized, DocumentIndex.Type.FOLDER);
+				index.putChildren(key, normalized, result);
+			}
+			return result.clone();
 		} catch (IllegalArgumentException e) {
 			// This exception is long and ugly and really just means file not found.
 			Log.d("EDOPro", "openFileDescriptor: File not found." + e);
@@ -233,15 +628,15 @@ public class StorageOperations {
 	// cannot rename things as part of the operation.
 	@RequiresApi(Build.VERSION_CODES.R)
 	public void contentUriCopyFile(File src, String dstParentDirUri) {
-		var normalizedOutputUri = normalizeUri(dstParentDirUri + "/" + src.getName());
-		if (contentUriElementExists(normalizedOutputUri) != EXISTS_TYPE.NONE)
+		var path = dstParentDirUri + "/" + src.getName();
+		var key = key(path);
+		var entry = resolve(key);
+		var normalizedOutputUri = entry.uri;
+		if (exists(key, entry, false) != EXISTS_TYPE.NONE)
 			return;
 		try {
-			{
-				var pathComponents = getPathAndFilenameFromUri(normalizedOutputUri);
-				if (!contentUriCreateFile(pathComponents[0], pathComponents[1])) {
-					return;
-				}
+			if (contentUriCreateFile(key, parentUri(key, normalizedOutputUri), src.getName()) == null) {
+				return;
 			}
 			var inputStream = new FileInputStream(src);
 			var outputStream = new FileOutputStream(context.getContentResolver().openFileDescriptor(Uri.parse(normalizedOutputUri), "w").getFileDescriptor());
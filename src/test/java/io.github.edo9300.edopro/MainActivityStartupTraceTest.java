@@ -0,0 +1,138 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Looper;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+/**
+ * Runs the launch step by step. The clock of Robolectric only moves when the
+ * test advances it, after each step it's moved forward by the real time the
+ * step took, so the milestones MainActivity records are as far apart as the
+ * work between them really was.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MainActivityStartupTraceTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File workingDir;
+	private MainActivity activity;
+
+	@Before
+	public void setUp() throws Exception {
+		StartupTrace.clear();
+		workingDir = folder.newFolder("EDOPro-KCG");
+		// the assets of this version are already copied, the launch goes straight to the game
+		new StartupState(workingDir.getPath(), BuildConfig.VERSION_CODE).save(RuntimeEnvironment.getApplication().getFilesDir());
+	}
+
+	/**
+	 * runs the step and moves the clock forward by the real time it took
+	 *
+	 * @return that time, in milliseconds
+	 */
+	private static long timed(ThrowingRunnable step) throws Throwable {
+		long start = System.nanoTime();
+		step.run();
+		var elapsed = Duration.ofNanos(System.nanoTime() - start);
+		ShadowSystemClock.advanceBy(elapsed);
+		return elapsed.toMillis();
+	}
+
+	/* waits for the tasks given to the state thread so far */
+	private static void awaitStateThread() throws Exception {
+		MainActivity.sStateExecutor.submit(() -> {
+		}).get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * launches the activity and runs it until it's done, the report of a
+	 * launch that reaches the native client is written when it returns
+	 *
+	 * @return the real time of the ui task that gets the loaded state, in milliseconds
+	 */
+	private long launch() throws Throwable {
+		var controller = Robolectric.buildActivity(MainActivity.class, new Intent(Intent.ACTION_MAIN));
+		// the state thread is held until onCreate returns, so the loaded state
+		// is always handed to the ui thread in its own step
+		var created = new CountDownLatch(1);
+		MainActivity.sStateExecutor.execute(() -> {
+			try {
+				created.await();
+			} catch (InterruptedException ignored) {
+			}
+		});
+		try {
+			timed(controller::create);
+		} finally {
+			created.countDown();
+		}
+		timed(MainActivityStartupTraceTest::awaitStateThread);
+		long uiTask = timed(() -> shadowOf(Looper.getMainLooper()).idle());
+		activity = controller.get();
+		awaitStateThread();
+		return uiTask;
+	}
+
+	@Test
+	@Config(sdk = Build.VERSION_CODES.R)
+	public void launchIsWithinBudgets() throws Throwable {
+		// the first launch loads and instruments the classes, only the second one is measured
+		launch();
+		StartupTrace.clear();
+		var report = new File(workingDir, "startup_report.txt");
+		assertTrue(report.delete());
+
+		long uiTask = launch();
+		assertTrue(activity.isFinishing());
+		var trace = StartupTrace.report();
+		var onCreate = trace.indexOf(StartupTrace.ON_CREATE);
+		var stateLoaded = trace.indexOf(StartupTrace.STATE_LOADED);
+		var copyChecked = trace.indexOf(StartupTrace.COPY_CHECKED);
+		var nativeLaunched = trace.indexOf(StartupTrace.NATIVE_LAUNCHED);
+		assertTrue(trace, 0 <= onCreate && onCreate < stateLoaded && stateLoaded < copyChecked && copyChecked < nativeLaunched);
+		assertTrue(trace, StartupTrace.withinBudgets());
+		// the copy check and the hand off run in the ui task of the loaded
+		// state, its marks share one time, the whole task must fit the budget
+		var copyCheckBudget = StartupTrace.budget(StartupTrace.STATE_LOADED, StartupTrace.COPY_CHECKED);
+		assertTrue(trace + "ui task: " + uiTask + " ms", uiTask <= copyCheckBudget);
+
+		var content = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+		assertTrue(content, content.contains(StartupTrace.NATIVE_LAUNCHED));
+		assertTrue(content, content.contains("budgets:\n"));
+	}
+
+	@Test
+	@Config(sdk = Build.VERSION_CODES.Q)
+	public void finishingBeforeScopedStorageIsNotALaunch() throws Throwable {
+		launch();
+		assertTrue(activity.isFinishing());
+		var trace = StartupTrace.report();
+		assertTrue(trace, trace.contains(StartupTrace.ON_CREATE));
+		assertFalse(trace, trace.contains(StartupTrace.NATIVE_LAUNCHED));
+		assertFalse(new File(workingDir, "startup_report.txt").exists());
+	}
+}
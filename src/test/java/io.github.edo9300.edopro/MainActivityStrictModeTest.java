@@ -0,0 +1,108 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.strictmode.Violation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * The launch with a StrictMode policy on the ui thread that records its
+ * disk violations. Robolectric runs on the jvm file classes, only the
+ * accesses of the framework reach StrictMode, so the state thread is also
+ * held at each step: the ui thread must get as far as it can without the
+ * files the state thread reads and writes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.R)
+public class MainActivityStrictModeTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+	@After
+	public void tearDown() {
+		StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
+	}
+
+	/* keeps the state thread busy until the latch is released */
+	private static CountDownLatch holdStateThread() {
+		var held = new CountDownLatch(1);
+		MainActivity.sStateExecutor.execute(() -> {
+			try {
+				held.await();
+			} catch (InterruptedException ignored) {
+			}
+		});
+		return held;
+	}
+
+	private static void releaseStateThread(CountDownLatch held) throws Exception {
+		held.countDown();
+		MainActivity.sStateExecutor.submit(() -> {
+		}).get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void launchDoesNotTouchTheDiskOnTheUiThread() throws Exception {
+		var workingDir = folder.newFolder("EDOPro-KCG");
+		var filesDir = RuntimeEnvironment.getApplication().getFilesDir();
+		var report = new File(workingDir, "startup_report.txt");
+
+		var policy = new StrictMode.ThreadPolicy.Builder()
+				.detectDiskReads()
+				.detectDiskWrites()
+				.penaltyListener(Runnable::run, (Violation v) -> violations.add(String.valueOf(v)))
+				.build();
+		StrictMode.setThreadPolicy(policy);
+
+		var controller = Robolectric.buildActivity(MainActivity.class, new Intent(Intent.ACTION_MAIN));
+		var held = holdStateThread();
+		controller.create();
+		shadowOf(Looper.getMainLooper()).idle();
+		// the assets of this version are already copied, the launch goes
+		// straight to the game if the state is only read on the state thread
+		var launchPolicy = StrictMode.allowThreadDiskWrites();
+		try {
+			new StartupState(workingDir.getPath(), BuildConfig.VERSION_CODE).save(filesDir);
+		} finally {
+			StrictMode.setThreadPolicy(launchPolicy);
+		}
+		releaseStateThread(held);
+
+		held = holdStateThread();
+		shadowOf(Looper.getMainLooper()).idle();
+		var activity = controller.get();
+		assertTrue(activity.isFinishing());
+		assertFalse("the report is written on the state thread", report.exists());
+		releaseStateThread(held);
+		assertTrue(report.exists());
+
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(Collections.emptyList(), violations);
+		assertEquals("the launch puts back the policy it replaced", policy.toString(), StrictMode.getThreadPolicy().toString());
+	}
+}
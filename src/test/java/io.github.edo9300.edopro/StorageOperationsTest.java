@@ -0,0 +1,190 @@
+package io.github.edo9300.edopro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.R)
+public class StorageOperationsTest {
+	private static final String AUTHORITY = "io.github.edo9300.edopro.test.documents";
+	private static final String ROOT_ID = "primary:EDOPro";
+	private static final Uri TREE = DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID);
+	private static final String ROOT = DocumentsContract.buildDocumentUriUsingTree(TREE, ROOT_ID).toString();
+
+	/**
+	 * A document tree kept in memory, answering the document and children
+	 * queries StorageOperations makes
+	 */
+	public static final class TreeProvider extends ContentProvider {
+		/* folder document id to the names of its children, folders with a trailing slash */
+		final Map<String, List<String>> folders = new HashMap<>();
+
+		void add(String documentId) {
+			int slash = documentId.lastIndexOf('/');
+			var name = documentId.substring(slash + 1);
+			folders.get(documentId.substring(0, slash)).add(folders.containsKey(documentId) ? name + "/" : name);
+		}
+
+		void remove(String documentId) {
+			int slash = documentId.lastIndexOf('/');
+			var name = documentId.substring(slash + 1);
+			folders.get(documentId.substring(0, slash)).removeIf(child -> child.equals(name) || child.equals(name + "/"));
+			folders.keySet().removeIf(folder -> folder.equals(documentId) || folder.startsWith(documentId + "/"));
+		}
+
+		@Override
+		public boolean onCreate() {
+			return true;
+		}
+
+		@Override
+		public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+			var cursor = new MatrixCursor(projection);
+			var documentId = DocumentsContract.getDocumentId(uri);
+			if (uri.getLastPathSegment().equals("children")) {
+				for (String name : folders.getOrDefault(documentId, List.of()))
+					cursor.addRow(row(projection, documentId + "/" + name));
+				return cursor;
+			}
+			int slash = documentId.lastIndexOf('/');
+			var siblings = slash < 0 ? null : folders.get(documentId.substring(0, slash));
+			var name = documentId.substring(slash + 1);
+			if (folders.containsKey(documentId) || (siblings != null && siblings.contains(name)))
+				cursor.addRow(row(projection, documentId));
+			return cursor;
+		}
+
+		private Object[] row(String[] projection, String documentId) {
+			boolean folder = documentId.endsWith("/");
+			if (folder)
+				documentId = documentId.substring(0, documentId.length() - 1);
+			folder |= folders.containsKey(documentId);
+			var row = new Object[projection.length];
+			for (int i = 0; i < projection.length; i++) {
+				switch (projection[i]) {
+					case DocumentsContract.Document.COLUMN_DOCUMENT_ID -> row[i] = documentId;
+					case DocumentsContract.Document.COLUMN_DISPLAY_NAME -> row[i] = documentId.substring(documentId.lastIndexOf('/') + 1);
+					case DocumentsContract.Document.COLUMN_MIME_TYPE -> row[i] = folder ? DocumentsContract.Document.MIME_TYPE_DIR : "image/jpeg";
+				}
+			}
+			return row;
+		}
+
+		@Override
+		public String getType(Uri uri) {
+			return null;
+		}
+
+		@Override
+		public Uri insert(Uri uri, ContentValues values) {
+			return null;
+		}
+
+		@Override
+		public int delete(Uri uri, String selection, String[] selectionArgs) {
+			return 0;
+		}
+
+		@Override
+		public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+			return 0;
+		}
+	}
+
+	private TreeProvider provider;
+	private StorageOperations storage;
+
+	@Before
+	public void setUp() {
+		provider = Robolectric.buildContentProvider(TreeProvider.class).create(AUTHORITY).get();
+		provider.folders.put(ROOT_ID, new ArrayList<>());
+		provider.folders.put(ROOT_ID + "/pics", new ArrayList<>());
+		provider.add(ROOT_ID + "/pics");
+		provider.add(ROOT_ID + "/pics/a.jpg");
+		storage = new StorageOperations(RuntimeEnvironment.getApplication(), ROOT);
+	}
+
+	@Test
+	public void changedChildRefreshesItsFolder() {
+		assertArrayEquals(new String[]{"a.jpg"}, storage.listFolderUri("/pics"));
+		var created = storage.normalizeUri("/pics/b.jpg");
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(created));
+
+		// created by another app, nothing tells the cached listing and missing path about it yet
+		provider.add(ROOT_ID + "/pics/b.jpg");
+		assertArrayEquals(new String[]{"a.jpg"}, storage.listFolderUri("/pics"));
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(created));
+
+		RuntimeEnvironment.getApplication().getContentResolver()
+				.notifyChange(DocumentsContract.buildDocumentUriUsingTree(TREE, ROOT_ID + "/pics/b.jpg"), null);
+		assertArrayEquals(new String[]{"a.jpg", "b.jpg"}, storage.listFolderUri("/pics"));
+		assertEquals(StorageOperations.EXISTS_TYPE.FILE, storage.contentUriElementExists(created));
+		storage.close();
+	}
+
+	@Test
+	public void uriAndPathShareTheirEntry() {
+		var uri = storage.normalizeUri("/pics/a b.jpg");
+		assertEquals(uri, storage.normalizeUri(uri));
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(uri));
+		// found missing through the uri, the path is answered without a query
+		provider.add(ROOT_ID + "/pics/a b.jpg");
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(storage.normalizeUri("pics/a b.jpg")));
+		storage.close();
+	}
+
+	@Test
+	public void changedRootRefreshesTheWholeTree() {
+		var pics = storage.normalizeUri("/pics");
+		var picture = storage.normalizeUri("/pics/a.jpg");
+		assertEquals(StorageOperations.EXISTS_TYPE.FOLDER, storage.contentUriElementExists(pics));
+		assertEquals(StorageOperations.EXISTS_TYPE.FILE, storage.contentUriElementExists(picture));
+
+		// deleted by another app, the types of both are cached
+		provider.remove(ROOT_ID + "/pics");
+		assertEquals(StorageOperations.EXISTS_TYPE.FOLDER, storage.contentUriElementExists(pics));
+		assertEquals(StorageOperations.EXISTS_TYPE.FILE, storage.contentUriElementExists(picture));
+
+		RuntimeEnvironment.getApplication().getContentResolver()
+				.notifyChange(DocumentsContract.buildDocumentUriUsingTree(TREE, ROOT_ID), null);
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(pics));
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(picture));
+		storage.close();
+	}
+
+	@Test
+	public void changeWithoutADocumentRefreshesTheWholeTree() {
+		assertArrayEquals(new String[]{"a.jpg"}, storage.listFolderUri("/pics"));
+		var picture = storage.normalizeUri("/pics/a.jpg");
+		assertEquals(StorageOperations.EXISTS_TYPE.FILE, storage.contentUriElementExists(picture));
+
+		provider.remove(ROOT_ID + "/pics/a.jpg");
+		provider.add(ROOT_ID + "/pics/b.jpg");
+		RuntimeEnvironment.getApplication().getContentResolver()
+				.notifyChange(new Uri.Builder().scheme("content").authority(AUTHORITY).build(), null);
+		assertArrayEquals(new String[]{"b.jpg"}, storage.listFolderUri("/pics"));
+		assertEquals(StorageOperations.EXISTS_TYPE.NONE, storage.contentUriElementExists(picture));
+		storage.close();
+	}
+}